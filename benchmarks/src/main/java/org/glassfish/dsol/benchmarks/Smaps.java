@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.glassfish.dsol.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the SMAPs and class files measured by the benchmarks.
+ */
+final class Smaps {
+
+  private Smaps() {
+  }
+
+  /**
+   * A valid SMAP with the given number of strata, each with fileIds
+   * files and lineEntries line entries, nested depth levels deep in
+   * embedded SMAPs.  A SMAP with embedded SMAPs is unresolved.
+   */
+  static String smap(int lineEntries, int fileIds, int strata, int depth) {
+    StringBuilder sb = new StringBuilder();
+    appendSmap(sb, "Bench_jsp.java", lineEntries, fileIds, strata, depth);
+    return sb.toString();
+  }
+
+  private static void appendSmap(StringBuilder sb, String javaFile, int lineEntries,
+                                 int fileIds, int strata, int depth) {
+    sb.append("SMAP\n").append(javaFile).append("\nJSP\n");
+    if (depth > 0) {
+      sb.append("*O JSP\n");
+      appendSmap(sb, "Inner" + depth + ".jsp", lineEntries, fileIds, strata, depth - 1);
+      sb.append("*C JSP\n");
+    }
+    for (int s = 0; s < strata; ++s) {
+      sb.append("*S ").append(s == 0 ? "JSP" : "Stratum" + s).append('\n');
+      sb.append("*F\n");
+      for (int f = 0; f < fileIds; ++f) {
+        sb.append("+ ").append(f).append(" page").append(f).append(".jsp\n");
+        sb.append("WEB-INF/jsp/page").append(f).append(".jsp\n");
+      }
+      sb.append("*L\n");
+      // consecutive ranges of three Java lines for each input line
+      int fileId = -1;
+      for (int l = 0; l < lineEntries; ++l) {
+        int f = l % fileIds;
+        sb.append(l + 1);
+        if (f != fileId) {
+          sb.append('#').append(f);
+          fileId = f;
+        }
+        sb.append(':').append(100 + 3 * l).append(",3\n");
+      }
+    }
+    sb.append("*V\norg.glassfish.bench\nvendor data\n");
+    sb.append("*E\n");
+  }
+
+  /**
+   * A class file with constantPoolSize filler constants and the SMAP
+   * as its SourceDebugExtension attribute.
+   */
+  static byte[] classFile(String smap, int constantPoolSize) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0xCAFEBABE);
+    out.writeShort(0);               // minor version
+    out.writeShort(52);              // major version
+    out.writeShort(6 + constantPoolSize);
+    utf8(out, "Bench_jsp");          // #1
+    out.writeByte(7);                // #2 Class
+    out.writeShort(1);
+    utf8(out, "java/lang/Object");   // #3
+    out.writeByte(7);                // #4 Class
+    out.writeShort(3);
+    for (int i = 0; i < constantPoolSize; ++i) {
+      utf8(out, "filler/constant/Number" + i);
+    }
+    utf8(out, "SourceDebugExtension");
+    int sdeIndex = 5 + constantPoolSize;
+    out.writeShort(0x21);            // public super
+    out.writeShort(2);               // this
+    out.writeShort(4);               // super
+    out.writeShort(0);               // interfaces
+    out.writeShort(0);               // fields
+    out.writeShort(0);               // methods
+    out.writeShort(1);               // attributes
+    byte[] sde = smap.getBytes(StandardCharsets.UTF_8);
+    out.writeShort(sdeIndex);
+    out.writeInt(sde.length);
+    out.write(sde);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  private static void utf8(DataOutputStream out, String value) throws IOException {
+    out.writeByte(1);
+    out.writeUTF(value);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.glassfish.dsol.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Access to the VerifySMAP tool.  The tool is in the unnamed package,
+ * which cannot be imported, and JMH does not allow benchmarks there, so
+ * its members are reached through method handles.  The handles are
+ * constants, so the JIT compiles the calls as direct calls.
+ */
+final class Tool {
+
+  private static final MethodHandle NEW_EXTRACT_SDE;
+  private static final MethodHandle FIND_SDE;
+  private static final MethodHandle NEW_BYTE_SEQUENCE;
+  private static final MethodHandle NEW_VERIFY_SMAP;
+  private static final MethodHandle DECODE;
+  private static final MethodHandle VERIFY;
+  private static final MethodHandle MAP_JAVA_LINE;
+
+  static {
+    try {
+      Class<?> verifySMAP = Class.forName("VerifySMAP");
+      Class<?> extractSDE = Class.forName("VerifySMAP$ExtractSDE");
+      Class<?> byteSequence = Class.forName("VerifySMAP$ByteSequence");
+      NEW_EXTRACT_SDE = constructor(extractSDE, String.class, ByteBuffer.class);
+      FIND_SDE = method(extractSDE, "findSDE");
+      NEW_BYTE_SEQUENCE = constructor(byteSequence, ByteBuffer.class);
+      NEW_VERIFY_SMAP = constructor(verifySMAP, String.class, CharSequence.class, boolean.class);
+      DECODE = method(verifySMAP, "decode");
+      VERIFY = method(verifySMAP, "verify");
+      MAP_JAVA_LINE = method(verifySMAP, "mapJavaLine", String.class, int.class);
+    } catch (ReflectiveOperationException ex) {
+      throw new ExceptionInInitializerError(ex);
+    }
+  }
+
+  private Tool() {
+  }
+
+  private static MethodHandle constructor(Class<?> cls, Class<?>... params)
+    throws ReflectiveOperationException {
+    Constructor<?> ctor = cls.getDeclaredConstructor(params);
+    ctor.setAccessible(true);
+    MethodHandle mh = MethodHandles.lookup().unreflectConstructor(ctor);
+    return mh.asType(mh.type().changeReturnType(Object.class));
+  }
+
+  private static MethodHandle method(Class<?> cls, String name, Class<?>... params)
+    throws ReflectiveOperationException {
+    Method m = cls.getDeclaredMethod(name, params);
+    m.setAccessible(true);
+    MethodHandle mh = MethodHandles.lookup().unreflect(m);
+    return mh.asType(mh.type().changeParameterType(0, Object.class));
+  }
+
+  static Object newExtractSDE(String source, ByteBuffer classFile) throws Throwable {
+    return (Object)NEW_EXTRACT_SDE.invokeExact(source, classFile);
+  }
+
+  static ByteBuffer findSDE(Object extractSDE) throws Throwable {
+    return (ByteBuffer)FIND_SDE.invokeExact(extractSDE);
+  }
+
+  static CharSequence byteSequence(ByteBuffer bytes) throws Throwable {
+    return (CharSequence)(Object)NEW_BYTE_SEQUENCE.invokeExact(bytes);
+  }
+
+  static Object newVerifySMAP(String source, CharSequence smap, boolean resolved) throws Throwable {
+    return (Object)NEW_VERIFY_SMAP.invokeExact(source, smap, resolved);
+  }
+
+  static boolean decode(Object verifySMAP) throws Throwable {
+    return (boolean)DECODE.invokeExact(verifySMAP);
+  }
+
+  static void verify(Object verifySMAP) throws Throwable {
+    VERIFY.invokeExact(verifySMAP);
+  }
+
+  static long mapJavaLine(Object verifySMAP, String stratumId, int javaLine) throws Throwable {
+    return (long)MAP_JAVA_LINE.invokeExact(verifySMAP, stratumId, javaLine);
+  }
+}
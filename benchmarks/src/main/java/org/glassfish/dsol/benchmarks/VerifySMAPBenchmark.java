@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+package org.glassfish.dsol.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the VerifySMAP hot paths: SourceDebugExtension
+ * extraction, decode(), verify() and the line query functions, over
+ * SMAPs of varying size and shape.
+ *
+ * Run with: mvn package && java -jar target/benchmarks.jar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VerifySMAPBenchmark {
+
+  @Param({"100", "10000"})
+  public int lineEntries;
+
+  @Param({"1", "200"})
+  public int fileIds;
+
+  @Param({"1", "3"})
+  public int strata;
+
+  @Param({"0", "3"})
+  public int embeddedDepth;
+
+  // filler constants in the class file ahead of the SourceDebugExtension name
+  @Param({"2000"})
+  public int constantPoolSize;
+
+  private String smap;
+  private boolean resolved;
+  private ByteBuffer smapBytes;
+  private byte[] classFile;
+  private Object decoded;
+  private int lastJavaLine;
+
+  @Setup
+  public void setup() throws Throwable {
+    smap = Smaps.smap(lineEntries, fileIds, strata, embeddedDepth);
+    resolved = embeddedDepth == 0;
+    smapBytes = ByteBuffer.wrap(smap.getBytes("UTF-8"));
+    classFile = Smaps.classFile(smap, constantPoolSize);
+    decoded = Tool.newVerifySMAP("bench", smap, resolved);
+    if (!Tool.decode(decoded)) {
+      throw new IllegalStateException("benchmark SMAP did not decode");
+    }
+    Tool.verify(decoded);
+    lastJavaLine = 100 + 3 * lineEntries;
+  }
+
+  @Benchmark
+  public ByteBuffer extractSDE() throws Throwable {
+    return Tool.findSDE(Tool.newExtractSDE("bench", ByteBuffer.wrap(classFile)));
+  }
+
+  @Benchmark
+  public boolean decode() throws Throwable {
+    return Tool.decode(Tool.newVerifySMAP("bench", Tool.byteSequence(smapBytes), resolved));
+  }
+
+  @Benchmark
+  public Object decodeString() throws Throwable {
+    Object vsmap = Tool.newVerifySMAP("bench", smap, resolved);
+    Tool.decode(vsmap);
+    return vsmap;
+  }
+
+  @Benchmark
+  public Object verify() throws Throwable {
+    Tool.verify(decoded);
+    return decoded;
+  }
+
+  @Benchmark
+  public Object extractDecodeVerify() throws Throwable {
+    ByteBuffer sde = Tool.findSDE(Tool.newExtractSDE("bench", ByteBuffer.wrap(classFile)));
+    Object vsmap = Tool.newVerifySMAP("bench", Tool.byteSequence(sde), resolved);
+    if (Tool.decode(vsmap)) {
+      Tool.verify(vsmap);
+    }
+    return vsmap;
+  }
+
+  // map every Java line of the page, as a debugger mapping a stack trace would
+  @Benchmark
+  public void mapAllJavaLines(Blackhole bh) throws Throwable {
+    for (int line = 1; line <= lastJavaLine; ++line) {
+      bh.consume(Tool.mapJavaLine(decoded, null, line));
+    }
+  }
+}
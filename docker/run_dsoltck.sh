@@ -74,21 +74,18 @@ curl http://localhost:8080/testclient/Hello.jsp
 ${GF_HOME}/vi/$GF_TOPLEVEL_DIR/glassfish/bin/asadmin --user admin --passwordfile ${ADMIN_PASSWORD_FILE} stop-domain
 ${GF_HOME}/vi/$GF_TOPLEVEL_DIR/glassfish/bin/asadmin --user admin --passwordfile ${ADMIN_PASSWORD_FILE} start-domain
 
-$JAVA_HOME/bin/java VerifySMAP ${GF_HOME}/vi/$GF_TOPLEVEL_DIR/glassfish/domains/domain1/generated/jsp/testclient/org/apache/jsp/Hello_jsp.class.smap > smap.log
-
-output=$(grep "is a correctly formatted SMAP" smap.log | wc -l)
-echo $output
-if [[ "$output" < 1 ]];then
-  failures="1"
-  status="Failed"
-else
-  failures="0"
-  status="Passed"
+# VerifySMAP writes the JUnit report itself; a failed verification is
+# recorded in the report rather than aborting the script
+REPORT=$WORKSPACE/${TCK_NAME}-tck-junit-report.xml
+rm -f $REPORT
+$JAVA_HOME/bin/java VerifySMAP -all -suite ${TCK_NAME}-tck -junit $REPORT ${GF_HOME}/vi/$GF_TOPLEVEL_DIR/glassfish/domains/domain1/generated/jsp/testclient/org/apache/jsp/Hello_jsp.class.smap > smap.log 2>&1 || true
+cat smap.log
+
+# VerifySMAP did not get as far as writing the report: record that as a failure
+if [ ! -f $REPORT ]; then
+  echo "<testsuite id=\"1\" name=\"${TCK_NAME}-tck\" tests=\"1\" failures=\"1\" errors=\"0\" disabled=\"0\" skipped=\"0\">" > $REPORT
+  echo "<testcase name=\"VerifySMAP\" classname=\"VerifySMAP\" time=\"0\" status=\"Failed\"><failure message=\"VerifySMAP wrote no report, see smap.log\"/></testcase>" >> $REPORT
+  echo "</testsuite>" >> $REPORT
 fi
-
-echo "<testsuite id=\"1\" name=\"${TCK_NAME}-tck\" tests=\"1\" failures=\"${failures}\" errors=\"0\" disabled=\"0\" skipped=\"0\">" > $WORKSPACE/${TCK_NAME}-tck-junit-report.xml
-echo "<testcase name=\"VerifySMAP\" classname=\"VerifySMAP\" time=\"0\" status=\"${status}\"><system-out></system-out></testcase>" >> $WORKSPACE/${TCK_NAME}-tck-junit-report.xml
-echo "</testsuite>" >> $WORKSPACE/${TCK_NAME}-tck-junit-report.xml
-echo "" >> $WORKSPACE/${TCK_NAME}-tck-junit-report.xml
-chmod 777 $WORKSPACE/${TCK_NAME}-tck-junit-report.xml
+chmod 777 $REPORT
 
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.util.zip.*;
+import java.io.*;
+import java.nio.file.Path;
+
+/**
+ * Verifies the SMAPs in a WAR, EAR or JAR without unpacking it.
+ * In a WAR the classes under WEB-INF/classes and in the jars under
+ * WEB-INF/lib are verified; in an EAR every module; in a JAR every
+ * class.  Stand-alone "*.smap" entries are verified too.
+ *
+ * Entries of the archive itself are inflated on the worker threads;
+ * nested archives are streamed on the calling thread, entry by entry.
+ * Big SMAP entries, nested or not, are verified as they are inflated,
+ * never held whole.  Nothing is written to disk.
+ */
+class ArchiveVerifier {
+
+  // SMAP entries bigger than this are verified as they are inflated
+  static final long STREAM_SIZE = 4L * 1024 * 1024;
+
+  private final BatchVerifier batch;
+
+  ArchiveVerifier(BatchVerifier batch) {
+    this.batch = batch;
+  }
+
+  static boolean isArchive(String name) {
+    return name.endsWith(".war") || name.endsWith(".ear") || name.endsWith(".jar");
+  }
+
+  static boolean isWar(String name) {
+    return name.endsWith(".war");
+  }
+
+  /**
+   * Is the entry of an archive of the given kind to be verified?
+   */
+  static boolean isVerifiedEntry(String archiveName, String entryName) {
+    if (entryName.endsWith(".smap")) {
+      return true;
+    }
+    if (!entryName.endsWith(".class")) {
+      return false;
+    }
+    return !isWar(archiveName) || entryName.startsWith("WEB-INF/classes/");
+  }
+
+  /**
+   * Is the entry of an archive of the given kind an archive to search?
+   */
+  static boolean isNestedArchive(String archiveName, String entryName) {
+    if (isWar(archiveName)) {
+      return entryName.startsWith("WEB-INF/lib/") && entryName.endsWith(".jar") &&
+        entryName.indexOf('/', "WEB-INF/lib/".length()) < 0;
+    }
+    if (archiveName.endsWith(".ear")) {
+      return isArchive(entryName);
+    }
+    return false;
+  }
+
+  void verifyArchive(Path archive) throws IOException, InterruptedException {
+    final String archiveName = archive.toString();
+    final ZipFile zip = new ZipFile(archive.toFile());
+    try {
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        final String name = entry.getName();
+        final String source = archiveName + "!/" + name;
+        if (isVerifiedEntry(archiveName, name)) {
+          batch.submit(source, new BatchVerifier.Task() {
+            public void run() throws IOException {
+              long start = System.nanoTime();
+              InputStream in = zip.getInputStream(entry);
+              try {
+                if (name.endsWith(".smap") && entry.getSize() > STREAM_SIZE) {
+                  batch.verifySmapStream(source, in);
+                } else {
+                  byte[] bytes = in.readAllBytes();
+                  verifyEntry(source, name, bytes, System.nanoTime() - start);
+                }
+              } finally {
+                in.close();
+              }
+            }
+          });
+        } else if (isNestedArchive(archiveName, name)) {
+          InputStream in = zip.getInputStream(entry);
+          try {
+            verifyNested(source, new ZipInputStream(in));
+          } finally {
+            in.close();
+          }
+        }
+      }
+      // the zip file must stay open until its entries are verified
+      batch.await();
+    } finally {
+      zip.close();
+    }
+  }
+
+  /**
+   * Verify an archive within an archive, reading it as a stream.
+   */
+  void verifyNested(String archiveName, ZipInputStream zin)
+    throws IOException, InterruptedException {
+    ZipEntry entry;
+    while ((entry = zin.getNextEntry()) != null) {
+      if (entry.isDirectory()) {
+        continue;
+      }
+      final String name = entry.getName();
+      final String source = archiveName + "!/" + name;
+      if (isVerifiedEntry(archiveName, name)) {
+        long start = System.nanoTime();
+        final byte[] bytes;
+        if (name.endsWith(".smap")) {
+          // the size of a streamed entry is often not known until it is read
+          bytes = zin.readNBytes((int)STREAM_SIZE + 1);
+          if (bytes.length > STREAM_SIZE) {
+            // verified here, since the stream is at the entry
+            InputStream rest = new FilterInputStream(zin) {
+              public void close() {
+                // the archive's stream goes on to the next entry
+              }
+            };
+            final InputStream in = new SequenceInputStream(new ByteArrayInputStream(bytes), rest);
+            batch.runTask(source, new BatchVerifier.Task() {
+              public void run() {
+                batch.verifySmapStream(source, in);
+              }
+            });
+            continue;
+          }
+        } else {
+          bytes = zin.readAllBytes();
+        }
+        final long readNanos = System.nanoTime() - start;
+        batch.submit(source, new BatchVerifier.Task() {
+          public void run() {
+            verifyEntry(source, name, bytes, readNanos);
+          }
+        });
+      } else if (isNestedArchive(archiveName, name)) {
+        verifyNested(source, new ZipInputStream(zin));
+      }
+    }
+  }
+
+  void verifyEntry(String source, String name, byte[] bytes, long readNanos) {
+    if (name.endsWith(".class")) {
+      batch.verifyClassBytes(source, bytes, readNanos);
+    } else {
+      batch.verifySmapBytes(source, bytes, readNanos);
+    }
+  }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Batch mode for VerifySMAP.  Every argument is a file, an archive, a
+ * directory or a glob pattern; directories are walked for "*.class" and
+ * "*.smap" files.  All files found are verified in one JVM on a worker
+ * pool sized to the number of processors, and one summary is printed at
+ * the end.
+ *
+ * Options:
+ *   -all           report every violation in a file, not just the first
+ *   -analyze       also report overlapping and unmapped line ranges
+ *   -parallel      decode the strata of big SMAPs in parallel
+ *   -junit <file>  write a JUnit XML report
+ *   -json <file>   write a JSON report
+ *   -suite <name>  the test suite name in the reports (default debugging-tck)
+ *   -cache <file>  reuse the results of earlier runs for unchanged SMAPs
+ *   -watch         keep watching the directories, see WatchVerifier
+ *   -debounce <ms> with -watch, how long a file must be quiet before it is verified
+ *   -stats         print latency histograms and throughput
+ */
+class BatchVerifier {
+
+  // verifications queued or running per worker thread
+  private static final int SLOTS_PER_THREAD = 4;
+
+  private final ExecutorService pool;
+  private final int slotCount;
+  private final Semaphore slots;
+
+  private final List<VerifySMAP.Result> results = new ArrayList<VerifySMAP.Result>();
+  private int skipped = 0;
+  private int cached = 0;
+
+  boolean collectAll = false;
+  boolean analyze = false;
+  boolean parallel = false;
+  VerificationCache cache = null;
+  VerificationStats stats = null;
+
+  BatchVerifier(int threads) {
+    pool = Executors.newFixedThreadPool(threads);
+    slotCount = threads * SLOTS_PER_THREAD;
+    slots = new Semaphore(slotCount);
+  }
+
+  /**
+   * A verifier of files on the caller's own threads, see VerifyDaemon;
+   * without a pool, submit and verifyAll cannot be used.
+   */
+  BatchVerifier() {
+    pool = null;
+    slotCount = 0;
+    slots = null;
+  }
+
+  /**
+   * Batch mode is used whenever there is more than one argument, or the
+   * single argument is a directory, an archive or a glob pattern.
+   */
+  static boolean isBatch(String[] args) {
+    if (args.length != 1 || args[0].startsWith("-")) {
+      return true;
+    }
+    return isGlob(args[0]) || ArchiveVerifier.isArchive(args[0]) ||
+           new File(args[0]).isDirectory();
+  }
+
+  static boolean isGlob(String arg) {
+    return arg.indexOf('*') >= 0 || arg.indexOf('?') >= 0 ||
+           arg.indexOf('[') >= 0 || arg.indexOf('{') >= 0;
+  }
+
+  static boolean isVerifiable(Path path) {
+    String name = path.getFileName().toString();
+    return name.endsWith(".class") || name.endsWith(".smap");
+  }
+
+  /**
+   * Expand the arguments into the list of files to verify.
+   */
+  static List<Path> collect(String[] args) throws IOException {
+    final List<Path> files = new ArrayList<Path>();
+    for (String arg : args) {
+      if (isGlob(arg)) {
+        collectGlob(arg, files);
+      } else {
+        Path path = Paths.get(arg);
+        if (Files.isDirectory(path)) {
+          collectTree(path, null, files);
+        } else {
+          files.add(path);
+        }
+      }
+    }
+    return files;
+  }
+
+  static void collectGlob(String pattern, List<Path> files) throws IOException {
+    // walk from the longest leading part of the pattern without wildcards
+    String base = pattern.replace(File.separatorChar, '/');
+    int firstWild = 0;
+    while (firstWild < base.length() && "*?[{".indexOf(base.charAt(firstWild)) < 0) {
+      ++firstWild;
+    }
+    int slash = base.lastIndexOf('/', firstWild);
+    Path root = Paths.get(slash < 0? "." : (slash == 0? "/" : base.substring(0, slash)));
+    if (!Files.isDirectory(root)) {
+      return;
+    }
+    String relative = slash < 0? pattern : pattern.substring(slash + 1);
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + relative);
+    collectTree(root, matcher, files);
+  }
+
+  static void collectTree(final Path root, final PathMatcher matcher,
+                          final List<Path> files) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile() &&
+            (matcher == null? isVerifiable(file) : matcher.matches(root.relativize(file)))) {
+          files.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  static String describe(VerifySMAP.AssertionViolationException violation) {
+    return (violation.lineNumber == -1? "" : "line " + violation.lineNumber + ": ") +
+      "assertion #" + violation.assertionNumber + " failed - " + violation.message +
+      (violation.detail == null? "" : " (" + violation.detail + ")");
+  }
+
+  /**
+   * A verification to run on the pool.
+   */
+  interface Task {
+    void run() throws IOException;
+  }
+
+  /**
+   * Queue a verification, waiting while all slots are taken so that
+   * only a bounded number of files (and their bytes) are in memory.
+   */
+  void submit(final String source, final Task task) throws InterruptedException {
+    slots.acquire();
+    try {
+      pool.execute(new Runnable() {
+        public void run() {
+          try {
+            runTask(source, task);
+          } finally {
+            slots.release();
+          }
+        }
+      });
+    } catch (RejectedExecutionException ex) {
+      slots.release();
+      throw ex;
+    }
+  }
+
+  /**
+   * Run a verification on the calling thread; a failure is recorded
+   * as the result of the file.
+   */
+  void runTask(String source, Task task) {
+    try {
+      task.run();
+    } catch (IOException ex) {
+      failed(source, ex.toString());
+    } catch (VerifySMAP.ConfigurationException ex) {
+      failed(source, ex.getMessage());
+    } catch (RuntimeException ex) {
+      failed(source, ex.toString());
+    } catch (OutOfMemoryError ex) {
+      failed(source, "Too big to verify in this heap: " + ex.getMessage());
+    }
+  }
+
+  /**
+   * Wait until every queued verification has finished.
+   */
+  void await() throws InterruptedException {
+    slots.acquire(slotCount);
+    slots.release(slotCount);
+  }
+
+  synchronized void record(VerifySMAP.Result result) {
+    results.add(result);
+    if (stats != null) {
+      stats.add(result.metrics);
+    }
+    VerificationEvent.commit(result);
+  }
+
+  void failed(String source, String description) {
+    record(VerifySMAP.Result.configurationError(source, description));
+  }
+
+  synchronized void skipped(String source) {
+    ++skipped;
+  }
+
+  synchronized void cacheHit() {
+    ++cached;
+  }
+
+  /**
+   * Verify SMAP bytes, unless the cache has the result already.
+   * The cache does not keep warnings, so it is not used with -analyze.
+   */
+  VerifySMAP.Result check(String source, ByteBuffer smap, boolean resolved) {
+    if (cache == null || analyze) {
+      return VerifySMAP.verify(source, new VerifySMAP.ByteSequence(smap), resolved,
+                               collectAll, analyze, null, parallel);
+    }
+    VerificationCache.Key key = VerificationCache.key(smap, resolved, collectAll);
+    VerifySMAP.Result result = cache.get(key, source);
+    if (result != null) {
+      cacheHit();
+      result.metrics.cached = true;
+      result.metrics.smapBytes = smap.remaining();
+    } else {
+      result = VerifySMAP.verify(source, new VerifySMAP.ByteSequence(smap), resolved,
+                                 collectAll, false, null, parallel);
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  /**
+   * Verify the SMAP in class file bytes.  With -analyze, the lines of
+   * the LineNumberTables are collected in the same scan and checked
+   * against the SMAP.  If the class has no SMAP and it is not required,
+   * null is returned.
+   */
+  VerifySMAP.Result checkClass(String source, ByteBuffer classFile, boolean required) {
+    long start = System.nanoTime();
+    VerifySMAP.ExtractSDE extract = new VerifySMAP.ExtractSDE(source, classFile);
+    if (analyze) {
+      extract.javaLines = new BitSet();
+    }
+    ByteBuffer sde = extract.findSDE(required);
+    if (sde == null) {
+      return null;
+    }
+    long extractNanos = System.nanoTime() - start;
+    VerifySMAP.Result result;
+    if (analyze) {
+      result = VerifySMAP.verify(source, new VerifySMAP.ByteSequence(sde), true,
+                                 collectAll, true, extract.javaLines, parallel);
+    } else {
+      result = check(source, sde, true);
+    }
+    result.metrics.bytes = classFile.remaining();
+    result.metrics.extractNanos = extractNanos;
+    return result;
+  }
+
+  /**
+   * Read and verify an SMAP or class file.
+   */
+  VerifySMAP.Result checkFile(String source) throws IOException {
+    return checkFile(source, false);
+  }
+
+  /**
+   * As above; if the file may change while it is verified, it is read
+   * into the heap rather than mapped, see VerifySMAP.readWhole.
+   */
+  VerifySMAP.Result checkFile(String source, boolean changing) throws IOException {
+    long start = System.nanoTime();
+    ByteBuffer bytes = changing? VerifySMAP.readWhole(source) : VerifySMAP.mapWhole(source);
+    long readNanos = System.nanoTime() - start;
+    VerifySMAP.Result result = VerifySMAP.isResolved(source)?
+      checkClass(source, bytes, true) : check(source, bytes, false);
+    result.metrics.bytes = bytes.remaining();
+    result.metrics.readNanos = readNanos;
+    return result;
+  }
+
+  /**
+   * Verify the SMAP in the class file bytes read from an archive.
+   * Archives hold many classes that have no SMAP, so those are skipped.
+   */
+  void verifyClassBytes(String source, byte[] bytes, long readNanos) {
+    VerifySMAP.Result result = checkClass(source, ByteBuffer.wrap(bytes), false);
+    if (result == null) {
+      skipped(source);
+    } else {
+      result.metrics.readNanos = readNanos;
+      record(result);
+    }
+  }
+
+  void verifySmapBytes(String source, byte[] bytes, long readNanos) {
+    VerifySMAP.Result result = check(source, ByteBuffer.wrap(bytes), false);
+    result.metrics.bytes = bytes.length;
+    result.metrics.readNanos = readNanos;
+    record(result);
+  }
+
+  /**
+   * Verify an SMAP as it is read from a stream, for SMAPs too big to
+   * read whole.  The cache needs the whole SMAP, so it is not used.
+   */
+  void verifySmapStream(String source, InputStream in) {
+    record(VerifySMAP.verify(source, new VerifySMAP.StreamText(Channels.newChannel(in)),
+                             false, collectAll, analyze, null, false));
+  }
+
+  void verifyAll(List<Path> files) throws IOException, InterruptedException {
+    try {
+      for (final Path file : files) {
+        final String source = file.toString();
+        if (ArchiveVerifier.isArchive(source)) {
+          new ArchiveVerifier(this).verifyArchive(file);
+        } else {
+          submit(source, new Task() {
+            public void run() throws IOException {
+              record(checkFile(source));
+            }
+          });
+        }
+      }
+      await();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  int failureCount() {
+    return ReportWriter.failureCount(results);
+  }
+
+  void printSummary(PrintStream out, long millis) {
+    int warnings = 0;
+    Collections.sort(results, ReportWriter.BY_SOURCE);
+    for (VerifySMAP.Result result : results) {
+      if (result.hasConfigurationError()) {
+        out.println("FAILED " + result.getSource() + ": Configuration error - " +
+                    result.getConfigurationError());
+      }
+      for (VerifySMAP.AssertionViolationException violation : result.getViolations()) {
+        out.println("FAILED " + result.getSource() + ": " + describe(violation));
+      }
+      for (String warning : result.getWarnings()) {
+        out.println("WARNING " + result.getSource() + ": " + warning);
+        ++warnings;
+      }
+    }
+    int failed = failureCount();
+    out.println("Verified " + results.size() + " SMAPs in " + millis + " ms: " +
+                (results.size() - failed) + " passed, " + failed + " failed" +
+                (skipped == 0? "" : ", " + skipped + " classes without SMAP skipped") +
+                (analyze? ", " + warnings + " warnings" : "") +
+                (cache == null? "" : ", " + cached + " results from cache"));
+    if (stats != null) {
+      stats.print(out, millis);
+    }
+  }
+
+  /**
+   * Run batch mode, returning the process exit status.
+   */
+  static int run(String[] args) throws IOException {
+    long start = System.currentTimeMillis();
+    BatchVerifier batch = new BatchVerifier(Runtime.getRuntime().availableProcessors());
+    String junitReport = null;
+    String jsonReport = null;
+    String suite = ReportWriter.DEFAULT_SUITE_NAME;
+    String optionError = null;
+    boolean watch = false;
+    long debounceMillis = WatchVerifier.DEFAULT_DEBOUNCE_MILLIS;
+    List<String> paths = new ArrayList<String>();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-all")) {
+        batch.collectAll = true;
+      } else if (args[i].equals("-analyze")) {
+        batch.analyze = true;
+      } else if (args[i].equals("-parallel")) {
+        batch.parallel = true;
+      } else if (args[i].equals("-stats")) {
+        batch.stats = new VerificationStats();
+      } else if (args[i].equals("-junit") && i + 1 < args.length) {
+        junitReport = args[++i];
+      } else if (args[i].equals("-json") && i + 1 < args.length) {
+        jsonReport = args[++i];
+      } else if (args[i].equals("-suite") && i + 1 < args.length) {
+        suite = args[++i];
+      } else if (args[i].equals("-watch")) {
+        watch = true;
+      } else if (args[i].equals("-debounce") && i + 1 < args.length) {
+        debounceMillis = Long.parseLong(args[++i]);
+      } else if (args[i].equals("-cache") && i + 1 < args.length) {
+        batch.cache = new VerificationCache(Paths.get(args[++i]));
+        batch.cache.load();
+      } else if (args[i].startsWith("-")) {
+        optionError = "Unknown option " + args[i];
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (watch) {
+      if (optionError != null) {
+        VerifySMAP.configError("VerifySMAP", optionError);
+      }
+      try {
+        new WatchVerifier(batch, debounceMillis).watch(paths);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return 2;
+    }
+    // errors that stop the run are recorded, so that the reports show them
+    List<Path> files = collect(paths.toArray(new String[paths.size()]));
+    if (optionError != null) {
+      batch.failed("VerifySMAP", optionError);
+    } else if (files.isEmpty()) {
+      batch.failed("VerifySMAP", "No SMAP or class files found");
+    } else {
+      try {
+        batch.verifyAll(files);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        return 2;
+      }
+    }
+    if (batch.cache != null) {
+      batch.cache.save();
+    }
+    long millis = System.currentTimeMillis() - start;
+    batch.printSummary(System.out, millis);
+    if (junitReport != null) {
+      ReportWriter.writeJUnit(Paths.get(junitReport), suite, batch.results, millis);
+    }
+    if (jsonReport != null) {
+      ReportWriter.writeJson(Paths.get(jsonReport), suite, batch.results, millis);
+    }
+    return batch.failureCount() == 0? 0 : 1;
+  }
+}
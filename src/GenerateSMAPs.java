@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Writes a corpus of synthetic SMAPs, and class files carrying them as
+ * a SourceDebugExtension, to load test the verifier without a web
+ * container or a network:
+ *
+ *     java GenerateSMAPs [options] <output directory>
+ *
+ * Options:
+ *   -count <n>     valid SMAPs and valid class files to write, each (default 100)
+ *   -lines <n>     line entries per stratum (default 100)
+ *   -files <n>     FileIds per stratum (default 4)
+ *   -strata <n>    strata per SMAP (default 1)
+ *   -vendors <n>   vendor sections per SMAP (default 0)
+ *   -depth <n>     nesting of embedded SMAPs in the unresolved SMAPs (default 0)
+ *   -broken <n>    SMAPs to write that violate each assertion (default 0)
+ *   -seed <n>      seed of the random choices (default 1)
+ *
+ * Unresolved SMAPs go to "valid/NNN/PageI.smap" and class files to
+ * "valid/NNN/PageI_jsp.class", a thousand per directory; the SMAPs
+ * violating assertion #A go to "broken/aA/NNN".  "expected.txt" lists
+ * every file with the number of the assertion it fails first, or 0.
+ * The same options and seed always give the same corpus.
+ */
+class GenerateSMAPs {
+
+  // the assertions VerifySMAP checks, each seeded in broken SMAPs
+  static final int[] ASSERTIONS = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 14, 15, 16,
+                                    17, 18, 19, 20, 21, 22 };
+
+  int lines = 100;
+  int files = 4;
+  int strata = 1;
+  int vendors = 0;
+  int depth = 0;
+  long seed = 1;
+
+  /**
+   * An SMAP violating the given assertion, or none if 0.  A resolved
+   * SMAP has no embedded SMAPs, unless they are the violation.
+   */
+  String smap(Random random, String name, boolean resolved, int violation) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("SMAP\n").append(name).append("_jsp.java\n");
+    sb.append(violation == 2? "" : violation == 3? "Nope" : "JSP").append('\n');
+    if (violation == 19) {
+      return sb.append("*E\n").toString();
+    }
+    if (violation == 5) {
+      sb.append("*F\n1 early.jsp\n");
+    } else if (violation == 10) {
+      sb.append("*L\n1:1\n");
+    }
+    int nesting = violation == 20 || violation == 21 || violation == 22?
+      Math.max(depth, 1) : resolved? 0 : depth;
+    // open the embedded SMAPs, each in a stratum of the one enclosing it
+    for (int level = 1; level <= nesting; ++level) {
+      sb.append("*O ").append(stratumId(level - 1)).append('\n');
+      sb.append("SMAP\n").append(fileName(name, level - 1, 1)).append("\n\n");
+    }
+    // then close them, each followed by the strata of the enclosing one
+    for (int level = nesting; level >= 0; --level) {
+      strata(sb, random, name, level, level == 0? strata : 1, violation);
+      if (level > 0) {
+        sb.append("*E\n");
+        if (violation != 21 || level != 1) {   // else no CloseEmbeddedSection
+          sb.append("*C ").append(violation == 22 && level == 1? "Wrong" : stratumId(level - 1))
+            .append('\n');
+        }
+      }
+    }
+    for (int v = 0; v < vendors; ++v) {
+      sb.append("*V\ncom.example.vendor").append(v).append("\nvendor data ").append(random.nextInt())
+        .append('\n');
+    }
+    if (violation == 17) {
+      sb.append("*V\ncom-example\nvendor data\n");
+    } else if (violation == 18) {
+      sb.append("*X\nunknown section\n");
+    }
+    if (violation != 1) {
+      sb.append("*E\n");    // without it, the SMAP ends unexpectedly
+    }
+    return sb.toString();
+  }
+
+  static String stratumId(int level) {
+    return level == 0? "JSP" : "L" + level;
+  }
+
+  static String fileName(String name, int level, int fileId) {
+    return name + (level == 0? "" : "_" + level) + "_" + fileId + ".jsp";
+  }
+
+  void strata(StringBuilder sb, Random random, String name, int level, int count, int violation) {
+    // all strata of an SMAP map the same Java lines, from different files
+    long javaSeed = random.nextLong();
+    for (int s = 0; s < count; ++s) {
+      Random javaRandom = new Random(javaSeed);
+      // the violations of a stratum are in the first one of the SMAP
+      int v = level == 0 && s == 0? violation : 0;
+      sb.append("*S ").append(v == 4? "Java" : s == 0? stratumId(level) : "S" + s).append('\n');
+      sb.append("*F\n");
+      for (int f = 1; f <= files; ++f) {
+        int fileId = v == 7 && f == files && files > 1? 1 : f;
+        String fileName = v == 8 && f == 1? "" : fileName(name, level, f);
+        if (f % 2 == 0 || (v == 9 && f == 1)) {
+          sb.append("+ ").append(fileId).append(' ').append(fileName).append('\n');
+          sb.append(v == 9? "" : "dir/" + fileName).append('\n');
+        } else {
+          sb.append(fileId).append(' ').append(fileName).append('\n');
+        }
+      }
+      if (v == 7 && files == 1) {
+        sb.append("1 again.jsp\n");
+      }
+      if (v == 6) {
+        sb.append("*F\n").append(files + 1).append(" extra.jsp\n");
+      }
+      sb.append("*L\n");
+      int javaLine = 1;
+      int currentFileId = 0;
+      for (int e = 0; e < lines; ++e) {
+        int fileId = 1 + random.nextInt(files);
+        int repeat = 1 + javaRandom.nextInt(3);
+        int increment = 1 + javaRandom.nextInt(2);
+        if (v == 16 && e == lines - 1) {
+          fileId = files + 7;
+        }
+        sb.append(v == 14 && e == 0? 0 : 1 + e * 3);
+        if (fileId != currentFileId) {
+          sb.append('#').append(fileId);
+          currentFileId = fileId;
+        }
+        sb.append(',').append(v == 12 && e == 0? 0 : repeat);
+        sb.append(':').append(v == 15 && e == 0? 0 : javaLine);
+        sb.append(',').append(increment).append('\n');
+        javaLine += repeat * increment;
+      }
+      if (v == 11) {
+        sb.append("*L\n1#1:1\n");
+      }
+    }
+  }
+
+  /**
+   * A class file with one method, whose LineNumberTable has the
+   * given lines, and the SMAP as its SourceDebugExtension.
+   */
+  static byte[] classFile(String className, byte[] sde, BitSet javaLines) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(sde.length + 256);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0xCAFEBABE);
+    out.writeShort(0);    // minor version
+    out.writeShort(52);   // major version
+    out.writeShort(10);   // constant pool count
+    out.writeByte(1);
+    out.writeUTF(className);                 // #1
+    out.writeByte(7);
+    out.writeShort(1);                       // #2 this class
+    out.writeByte(1);
+    out.writeUTF("java/lang/Object");        // #3
+    out.writeByte(7);
+    out.writeShort(3);                       // #4 super class
+    out.writeByte(1);
+    out.writeUTF("SourceDebugExtension");    // #5
+    out.writeByte(1);
+    out.writeUTF("run");                     // #6
+    out.writeByte(1);
+    out.writeUTF("()V");                     // #7
+    out.writeByte(1);
+    out.writeUTF("Code");                    // #8
+    out.writeByte(1);
+    out.writeUTF("LineNumberTable");         // #9
+    out.writeShort(0x21);                    // public super
+    out.writeShort(2);
+    out.writeShort(4);
+    out.writeShort(0);                       // interfaces
+    out.writeShort(0);                       // fields
+    out.writeShort(1);                       // methods
+    out.writeShort(0x09);                    // public static
+    out.writeShort(6);
+    out.writeShort(7);
+    out.writeShort(1);
+    int lineCount = Math.min(javaLines.cardinality(), 0xFFFF);
+    out.writeShort(8);                       // Code
+    out.writeInt(2 + 2 + 4 + 1 + 2 + 2 + 2 + 4 + 2 + 4 * lineCount);
+    out.writeShort(0);                       // max stack
+    out.writeShort(0);                       // max locals
+    out.writeInt(1);
+    out.writeByte(0xB1);                     // return
+    out.writeShort(0);                       // exception table
+    out.writeShort(1);
+    out.writeShort(9);                       // LineNumberTable
+    out.writeInt(2 + 4 * lineCount);
+    out.writeShort(lineCount);
+    for (int line = javaLines.nextSetBit(0), i = 0; i < lineCount; line = javaLines.nextSetBit(line + 1), ++i) {
+      out.writeShort(0);
+      out.writeShort(line);
+    }
+    out.writeShort(1);                       // attributes
+    out.writeShort(5);
+    out.writeInt(sde.length);
+    out.write(sde);
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  // the Java lines the first stratum of an SMAP maps, for the LineNumberTable
+  static BitSet javaLines(String smap) {
+    BitSet lines = new BitSet();
+    int section = smap.indexOf("*L\n");
+    if (section < 0) {
+      return lines;
+    }
+    int end = smap.indexOf("\n*", section + 3);
+    for (String entry : smap.substring(section + 3, end < 0? smap.length() : end).split("\n")) {
+      int colon = entry.indexOf(':');
+      int comma = entry.indexOf(',', colon);
+      int repeatAt = entry.indexOf(',');
+      if (colon < 0 || comma < 0 || repeatAt < 0 || repeatAt > colon) {
+        continue;
+      }
+      int repeat = Integer.parseInt(entry.substring(repeatAt + 1, colon));
+      int start = Integer.parseInt(entry.substring(colon + 1, comma));
+      int increment = Integer.parseInt(entry.substring(comma + 1));
+      if (start > 0 && start + repeat * increment <= 0xFFFF) {
+        lines.set(start, start + repeat * increment);
+      }
+    }
+    return lines;
+  }
+
+  Random random(int index, int violation) {
+    return new Random(seed * 1000003L + index * 31L + violation);
+  }
+
+  static Path shard(Path dir, int index) {
+    return dir.resolve(String.format("%03d", index / 1000));
+  }
+
+  void writeSmap(Path dir, int index, int violation) throws IOException {
+    String name = "Page" + index;
+    Path file = shard(dir, index).resolve(name + ".smap");
+    Files.createDirectories(file.getParent());
+    Files.write(file, smap(random(index, violation), name, false, violation)
+                .getBytes(StandardCharsets.UTF_8));
+  }
+
+  void writeClass(Path dir, int index, int violation) throws IOException {
+    String name = "Page" + index;
+    String smap = smap(random(index, violation), name, true, violation);
+    Path file = shard(dir, index).resolve(name + "_jsp.class");
+    Files.createDirectories(file.getParent());
+    Files.write(file, classFile(name + "_jsp", smap.getBytes(StandardCharsets.UTF_8), javaLines(smap)));
+  }
+
+  /**
+   * Write the corpus on a pool, returning the expected results.
+   */
+  SortedMap<String, Integer> generate(final Path out, int count, int broken)
+    throws IOException, InterruptedException {
+    final SortedMap<String, Integer> expected = new TreeMap<String, Integer>();
+    ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    List<Future<?>> writes = new ArrayList<Future<?>>();
+    try {
+      final Path valid = out.resolve("valid");
+      for (int i = 0; i < count; ++i) {
+        final int index = i;
+        expected.put(out.relativize(shard(valid, i).resolve("Page" + i + ".smap")).toString(), 0);
+        expected.put(out.relativize(shard(valid, i).resolve("Page" + i + "_jsp.class")).toString(), 0);
+        writes.add(pool.submit(new Callable<Void>() {
+          public Void call() throws IOException {
+            writeSmap(valid, index, 0);
+            writeClass(valid, index, 0);
+            return null;
+          }
+        }));
+      }
+      for (final int assertion : ASSERTIONS) {
+        final Path dir = out.resolve("broken").resolve("a" + assertion);
+        // only a resolved SMAP can lack a default stratum or have an embedded SMAP wrongly
+        final boolean resolved = assertion == 2 || assertion == 20;
+        for (int i = 0; i < broken; ++i) {
+          final int index = i;
+          String file = "Page" + i + (resolved? "_jsp.class" : ".smap");
+          expected.put(out.relativize(shard(dir, i).resolve(file)).toString(), assertion);
+          writes.add(pool.submit(new Callable<Void>() {
+            public Void call() throws IOException {
+              if (resolved) {
+                writeClass(dir, index, assertion);
+              } else {
+                writeSmap(dir, index, assertion);
+              }
+              return null;
+            }
+          }));
+        }
+      }
+      for (Future<?> write : writes) {
+        try {
+          write.get();
+        } catch (ExecutionException ex) {
+          throw new IOException(ex.getCause());
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    return expected;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    GenerateSMAPs generator = new GenerateSMAPs();
+    int count = 100;
+    int broken = 0;
+    String out = null;
+    for (int i = 0; i < args.length; ++i) {
+      String arg = args[i];
+      if (arg.startsWith("-") && i + 1 < args.length) {
+        int value = Integer.parseInt(args[++i]);
+        if (arg.equals("-count")) {
+          count = value;
+        } else if (arg.equals("-lines")) {
+          generator.lines = Math.max(value, 1);
+        } else if (arg.equals("-files")) {
+          generator.files = Math.max(value, 1);
+        } else if (arg.equals("-strata")) {
+          generator.strata = Math.max(value, 1);
+        } else if (arg.equals("-vendors")) {
+          generator.vendors = value;
+        } else if (arg.equals("-depth")) {
+          generator.depth = value;
+        } else if (arg.equals("-broken")) {
+          broken = value;
+        } else if (arg.equals("-seed")) {
+          generator.seed = value;
+        } else {
+          VerifySMAP.configError("GenerateSMAPs", "Unknown option " + arg);
+        }
+      } else if (out == null && !arg.startsWith("-")) {
+        out = arg;
+      } else {
+        VerifySMAP.configError("GenerateSMAPs", "Unexpected argument " + arg);
+      }
+    }
+    if (out == null) {
+      VerifySMAP.configError("GenerateSMAPs", "Must give the directory to write the corpus to");
+    }
+    long start = System.currentTimeMillis();
+    Path root = Paths.get(out);
+    SortedMap<String, Integer> expected = generator.generate(root, count, broken);
+    PrintWriter list = new PrintWriter(Files.newBufferedWriter(root.resolve("expected.txt"),
+                                                               StandardCharsets.UTF_8));
+    try {
+      for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+        list.println(entry.getValue() + " " + entry.getKey());
+      }
+    } finally {
+      list.close();
+    }
+    System.out.println("Wrote " + expected.size() + " files to " + root + " in " +
+                       (System.currentTimeMillis() - start) + " ms");
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import com.sun.jdi.*;
+import com.sun.jdi.connect.*;
+import com.sun.jdi.event.*;
+import com.sun.jdi.request.*;
+
+/**
+ * Cross-checks how a JVM resolves the strata of classes against the
+ * SMAPs as VerifySMAP decodes them:
+ *
+ *     java JDICrossCheck [-cp <extra classpath>] <classes directory or jar>...
+ *
+ * A JVM is launched that loads every class found, and is attached via
+ * JDI.  For each loaded class with a SourceDebugExtension, every Java
+ * line of the class is mapped to each of its strata both by the JVM
+ * (Location.lineNumber/sourceName) and by VerifySMAP.mapJavaLine, and
+ * the results are compared.  The classes are checked in parallel; each
+ * needs only the SDE and line table requests, the rest is local.
+ */
+class JDICrossCheck {
+
+  // loaded by the target JVM once all classes are loaded
+  static class Done {
+  }
+
+  /**
+   * The main class of the target JVM: loads and links every class in
+   * the directories and jars given, then signals it is done.
+   */
+  static class Loader {
+    public static void main(String[] args) throws Exception {
+      ClassLoader loader = Loader.class.getClassLoader();
+      int loaded = 0;
+      for (String arg : args) {
+        for (String name : classNames(Paths.get(arg))) {
+          try {
+            Class.forName(name, false, loader).getDeclaredMethods();   // links the class
+            ++loaded;
+          } catch (Throwable ex) {
+            System.err.println("Cannot load " + name + ": " + ex);
+          }
+        }
+      }
+      System.out.println("Loaded " + loaded + " classes");
+      Class.forName(Done.class.getName());
+    }
+  }
+
+  static List<String> classNames(final Path root) throws IOException {
+    final List<String> names = new ArrayList<String>();
+    if (Files.isDirectory(root)) {
+      Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          if (file.toString().endsWith(".class")) {
+            names.add(className(root.relativize(file).toString().replace(File.separatorChar, '/')));
+          }
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } else {
+      java.util.zip.ZipFile zip = new java.util.zip.ZipFile(root.toFile());
+      try {
+        Enumeration<? extends java.util.zip.ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+          String name = entries.nextElement().getName();
+          if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+            names.add(className(name));
+          }
+        }
+      } finally {
+        zip.close();
+      }
+    }
+    return names;
+  }
+
+  static String className(String path) {
+    return path.substring(0, path.length() - ".class".length()).replace('/', '.');
+  }
+
+  private final AtomicLong classesChecked = new AtomicLong();
+  private final AtomicLong linesCompared = new AtomicLong();
+  private final AtomicLong mismatches = new AtomicLong();
+  private final AtomicLong invalidSmaps = new AtomicLong();
+
+  void mismatch(String message) {
+    mismatches.incrementAndGet();
+    System.out.println("MISMATCH " + message);
+  }
+
+  /**
+   * Compare the JVM's stratum line mappings of a class with VerifySMAP's.
+   */
+  void check(ReferenceType type) {
+    String sde;
+    try {
+      sde = type.sourceDebugExtension();
+    } catch (AbsentInformationException ex) {
+      return;   // no SMAP
+    }
+    String name = type.name();
+    VerifySMAP.Result result = VerifySMAP.verifyDecoded(name, sde, true);
+    if (!result.isValid()) {
+      invalidSmaps.incrementAndGet();
+      System.out.println("FAILED " + name + ": " + BatchVerifier.describe(result.getViolation()));
+      return;
+    }
+    VerifySMAP smap = result.getDecoded();
+
+    List<Location> locations;
+    try {
+      locations = type.allLineLocations("Java", null);
+    } catch (AbsentInformationException ex) {
+      return;   // compiled without line numbers
+    }
+    classesChecked.incrementAndGet();
+    for (String stratum : type.availableStrata()) {
+      if (stratum.equals(VerifySMAP.BASE_STRATUM_NAME)) {
+        continue;
+      }
+      for (Location location : locations) {
+        int javaLine = location.lineNumber("Java");
+        long mapping = smap.mapJavaLine(stratum, javaLine);
+        int expectedLine = mapping == -1? -1 : VerifySMAP.mappedLine(mapping);
+        String expectedName = mapping == -1? null : 
+          smap.sourceName(VerifySMAP.mappedFileIndex(mapping));
+        int actualLine = location.lineNumber(stratum);
+        String actualName;
+        try {
+          actualName = location.sourceName(stratum);
+        } catch (AbsentInformationException ex) {
+          actualName = null;
+        }
+        linesCompared.incrementAndGet();
+        if (actualLine != expectedLine ||
+            (actualName == null? expectedName != null : !actualName.equals(expectedName))) {
+          mismatch(name + ": Java line " + javaLine + " in stratum " + stratum +
+                   ": JVM maps to " + actualName + ":" + actualLine +
+                   ", SMAP maps to " + expectedName + ":" + expectedLine);
+        }
+      }
+    }
+  }
+
+  /**
+   * Check all loaded classes in parallel.
+   */
+  void checkAll(VirtualMachine vm) throws InterruptedException {
+    if (!vm.canGetSourceDebugExtension()) {
+      VerifySMAP.configError("JDICrossCheck", "The target JVM cannot return SourceDebugExtensions");
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      List<Future<?>> checks = new ArrayList<Future<?>>();
+      for (final ReferenceType type : vm.allClasses()) {
+        if (!type.isPrepared()) {
+          continue;
+        }
+        checks.add(pool.submit(new Runnable() {
+          public void run() {
+            check(type);
+          }
+        }));
+      }
+      for (Future<?> check : checks) {
+        try {
+          check.get();
+        } catch (ExecutionException ex) {
+          System.err.println("Check failed: " + ex.getCause());
+        }
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  static VirtualMachine launch(String classpath, List<String> roots) throws Exception {
+    LaunchingConnector connector = Bootstrap.virtualMachineManager().defaultConnector();
+    Map<String, Connector.Argument> arguments = connector.defaultArguments();
+    arguments.get("options").setValue("-cp \"" + classpath + "\"");
+    StringBuilder main = new StringBuilder(Loader.class.getName());
+    for (String root : roots) {
+      main.append(" \"").append(root).append('"');
+    }
+    arguments.get("main").setValue(main.toString());
+    return connector.launch(arguments);
+  }
+
+  // copy the output of the target JVM, so it does not block
+  static void drain(final InputStream in, final PrintStream out) {
+    Thread thread = new Thread("JDICrossCheck output") {
+      public void run() {
+        try {
+          BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+          String line;
+          while ((line = reader.readLine()) != null) {
+            out.println("target: " + line);
+          }
+        } catch (IOException ex) {
+          // the target is gone
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public static void main(String[] args) throws Exception {
+    String classpath = System.getProperty("java.class.path");
+    List<String> roots = new ArrayList<String>();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-cp") && i + 1 < args.length) {
+        classpath += File.pathSeparator + args[++i];
+      } else {
+        roots.add(args[i]);
+        classpath += File.pathSeparator + args[i];
+      }
+    }
+    if (roots.isEmpty()) {
+      VerifySMAP.configError("JDICrossCheck", "Must give the class directories or jars to check");
+    }
+    long start = System.currentTimeMillis();
+    VirtualMachine vm = launch(classpath, roots);
+    drain(vm.process().getInputStream(), System.out);
+    drain(vm.process().getErrorStream(), System.err);
+
+    ClassPrepareRequest done = vm.eventRequestManager().createClassPrepareRequest();
+    done.addClassFilter(Done.class.getName());
+    done.setSuspendPolicy(EventRequest.SUSPEND_ALL);
+    done.enable();
+    vm.resume();
+
+    JDICrossCheck crossCheck = new JDICrossCheck();
+    boolean checked = false;
+    while (!checked) {
+      EventSet events = vm.eventQueue().remove();
+      for (Event event : events) {
+        if (event instanceof ClassPrepareEvent) {
+          crossCheck.checkAll(vm);
+          checked = true;
+        } else if (event instanceof VMDeathEvent || event instanceof VMDisconnectEvent) {
+          VerifySMAP.configError("JDICrossCheck", "The target JVM ended before loading the classes");
+        }
+      }
+      if (!checked) {
+        events.resume();
+      }
+    }
+    vm.exit(0);
+
+    System.out.println("Checked " + crossCheck.classesChecked.get() + " classes with SMAPs, " +
+                       crossCheck.linesCompared.get() + " line mappings in " +
+                       (System.currentTimeMillis() - start) + " ms: " +
+                       crossCheck.mismatches.get() + " mismatches, " +
+                       crossCheck.invalidSmaps.get() + " invalid SMAPs");
+    System.exit(crossCheck.mismatches.get() == 0 && crossCheck.invalidSmaps.get() == 0? 0 : 1);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Writes the results of a batch run as a JUnit XML or a JSON report.
+ * Each verified file is one test case; each violation is one failure.
+ */
+class ReportWriter {
+
+  static final String DEFAULT_SUITE_NAME = "debugging-tck";
+
+  static final Comparator<VerifySMAP.Result> BY_SOURCE = new Comparator<VerifySMAP.Result>() {
+    public int compare(VerifySMAP.Result r1, VerifySMAP.Result r2) {
+      return r1.getSource().compareTo(r2.getSource());
+    }
+  };
+
+  static int failureCount(List<VerifySMAP.Result> results) {
+    int failed = 0;
+    for (VerifySMAP.Result result : results) {
+      if (!result.isValid()) {
+        ++failed;
+      }
+    }
+    return failed;
+  }
+
+  static void writeJUnit(Path report, String suite, List<VerifySMAP.Result> results, long millis)
+    throws IOException {
+    PrintWriter out = open(report);
+    try {
+      out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+      out.println("<testsuite id=\"1\" name=\"" + xml(suite) + "\" tests=\"" + results.size() +
+                  "\" failures=\"" + failureCount(results) + "\" errors=\"0\" disabled=\"0\"" +
+                  " skipped=\"0\" time=\"" + (millis / 1000.0) + "\">");
+      for (VerifySMAP.Result result : results) {
+        out.print("<testcase name=\"" + xml(result.getSource()) +
+                  "\" classname=\"VerifySMAP\" time=\"0\" status=\"" +
+                  (result.isValid()? "Passed" : "Failed") + "\">");
+        if (result.hasConfigurationError()) {
+          out.print("<failure message=\"Configuration error - " +
+                    xml(result.getConfigurationError()) + "\"/>");
+        }
+        for (VerifySMAP.AssertionViolationException violation : result.getViolations()) {
+          out.print("<failure message=\"" + xml(violation.getMessage()) +
+                    "\" type=\"assertion #" + violation.assertionNumber + "\">" +
+                    xml(where(result, violation) + (violation.detail == null? "" : violation.detail)) +
+                    "</failure>");
+        }
+        out.print("<system-out>");
+        for (String warning : result.getWarnings()) {
+          out.print(xml("WARNING " + warning) + "\n");
+        }
+        out.println("</system-out></testcase>");
+      }
+      out.println("</testsuite>");
+    } finally {
+      out.close();
+    }
+  }
+
+  static void writeJson(Path report, String suite, List<VerifySMAP.Result> results, long millis)
+    throws IOException {
+    PrintWriter out = open(report);
+    try {
+      out.println("{");
+      out.println("  \"suite\": " + json(suite) + ",");
+      out.println("  \"tests\": " + results.size() + ",");
+      out.println("  \"failures\": " + failureCount(results) + ",");
+      out.println("  \"millis\": " + millis + ",");
+      out.print("  \"results\": [");
+      for (int i = 0; i < results.size(); ++i) {
+        VerifySMAP.Result result = results.get(i);
+        out.println(i == 0? "" : ",");
+        out.print("    { \"source\": " + json(result.getSource()) +
+                  ", \"valid\": " + result.isValid());
+        if (result.hasConfigurationError()) {
+          out.print(", \"configurationError\": " + json(result.getConfigurationError()));
+        }
+        out.print(", \"violations\": [");
+        List<VerifySMAP.AssertionViolationException> violations = result.getViolations();
+        for (int j = 0; j < violations.size(); ++j) {
+          VerifySMAP.AssertionViolationException violation = violations.get(j);
+          out.print((j == 0? "" : ", ") +
+                    "{ \"assertion\": " + violation.assertionNumber +
+                    ", \"message\": " + json(violation.message) +
+                    ", \"detail\": " + json(violation.detail) +
+                    ", \"line\": " + violation.lineNumber + " }");
+        }
+        out.print("]");
+        if (!result.getWarnings().isEmpty()) {
+          out.print(", \"warnings\": [");
+          List<String> warnings = result.getWarnings();
+          for (int j = 0; j < warnings.size(); ++j) {
+            out.print((j == 0? "" : ", ") + json(warnings.get(j)));
+          }
+          out.print("]");
+        }
+        out.print(" }");
+      }
+      out.println();
+      out.println("  ]");
+      out.println("}");
+    } finally {
+      out.close();
+    }
+  }
+
+  static PrintWriter open(Path report) throws IOException {
+    return new PrintWriter(new OutputStreamWriter(Files.newOutputStream(report),
+                                                  StandardCharsets.UTF_8));
+  }
+
+  static String where(VerifySMAP.Result result, VerifySMAP.AssertionViolationException violation) {
+    return result.getSource() + (violation.lineNumber == -1? "" : ":" + violation.lineNumber) + ": ";
+  }
+
+  // chars XML 1.0 does not allow, even as character references, become U+FFFD
+  static String xml(String text) {
+    if (text == null) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder(text.length());
+    for (int i = 0; i < text.length(); ++i) {
+      char ch = text.charAt(i);
+      switch (ch) {
+      case '<':  sb.append("&lt;"); break;
+      case '>':  sb.append("&gt;"); break;
+      case '&':  sb.append("&amp;"); break;
+      case '"':  sb.append("&quot;"); break;
+      case '\'': sb.append("&apos;"); break;
+      default:
+        if ((ch < ' ' && ch != '\t' && ch != '\n' && ch != '\r') || ch == '\uFFFE' || ch == '\uFFFF') {
+          sb.append('\uFFFD');
+        } else if (Character.isHighSurrogate(ch) && i + 1 < text.length() &&
+                   Character.isLowSurrogate(text.charAt(i + 1))) {
+          sb.append(ch).append(text.charAt(++i));
+        } else if (Character.isSurrogate(ch)) {
+          sb.append('\uFFFD');   // unpaired
+        } else {
+          sb.append(ch);
+        }
+      }
+    }
+    return sb.toString();
+  }
+
+  static String json(String text) {
+    if (text == null) {
+      return "null";
+    }
+    StringBuilder sb = new StringBuilder(text.length() + 2);
+    sb.append('"');
+    for (int i = 0; i < text.length(); ++i) {
+      char ch = text.charAt(i);
+      switch (ch) {
+      case '"':  sb.append("\\\""); break;
+      case '\\': sb.append("\\\\"); break;
+      case '\n': sb.append("\\n"); break;
+      case '\r': sb.append("\\r"); break;
+      case '\t': sb.append("\\t"); break;
+      default:
+        if (ch < ' ') {
+          sb.append(String.format("\\u%04x", (int)ch));
+        } else {
+          sb.append(ch);
+        }
+      }
+    }
+    return sb.append('"').toString();
+  }
+}
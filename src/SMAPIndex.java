@@ -0,0 +1,557 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * A binary index of the decoded tables of many SMAPs, so that tools
+ * mapping Java lines over and over need not parse the SMAPs again.
+ * The index is memory-mapped, and the queries, like those of
+ * VerifySMAP, read it in place without allocating.
+ *
+ *     java SMAPIndex [-o <index file>] <files, directories or glob patterns>
+ *     java SMAPIndex -query <index file> <name> <Java line> [<stratum>]
+ *
+ * An SMAP is indexed by the path of its file, relative to the directory
+ * it was found in and without ".class" or ".smap"; for class
+ * directories that is the class name.  Unresolved SMAPs are indexed
+ * resolved.  SMAPs that fail verification are skipped.
+ *
+ * The format, version 1, is big-endian; every field is a u4 (-1 for
+ * none) and every string an offset into the string table:
+ *
+ *   header   magic "SMIX", u2 version, u2 flags, then the number of
+ *            SMAPs, strata, files, line entries and breaks, and the
+ *            length of the string table
+ *   SMAPs    name, default stratum, first stratum, stratum count;
+ *            ordered by name
+ *   strata   id, first file, file count, first break, break count
+ *   files    FileId, name, path; ordered by FileId in each stratum
+ *   lines    JPLS start line, JPLS line increment, NJPLS start line, file
+ *   breaks   JPLS line, the line entry mapping it and the lines after
+ *            it up to the next break; ordered by line in each stratum
+ *   strings  u2 length and modified UTF-8, like DataOutput.writeUTF
+ *
+ * Indexes, strata and files are numbered across the whole index.
+ */
+class SMAPIndex {
+
+  static final int MAGIC = 0x534D4958;   // "SMIX"
+  static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 32;
+  static final int SMAP_SIZE = 16;
+  static final int STRATUM_SIZE = 20;
+  static final int FILE_SIZE = 12;
+  static final int LINE_SIZE = 16;
+  static final int BREAK_SIZE = 8;
+
+  /**
+   * Collects the tables of SMAPs, see VerifySMAP.exportIndex, and
+   * writes them as an index.
+   */
+  static class Writer {
+    private int[] smaps = new int[4 * 16];
+    private int[] strata = new int[5 * 16];
+    private int[] files = new int[3 * 64];
+    private int[] lines = new int[4 * 256];
+    private int[] breaks = new int[2 * 256];
+    private int smapCount = 0;
+    private int stratumCount = 0;
+    private int fileCount = 0;
+    private int lineCount = 0;
+    private int breakCount = 0;
+    private final List<String> names = new ArrayList<String>();
+
+    private final Map<String, Integer> stringOffsets = new HashMap<String, Integer>();
+    private final ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+    private final DataOutputStream stringTable = new DataOutputStream(stringBytes);
+
+    private static int[] grow(int[] table, int needed) {
+      return needed <= table.length? table : Arrays.copyOf(table, Math.max(needed, 2 * table.length));
+    }
+
+    private int string(String s) {
+      if (s == null) {
+        return -1;
+      }
+      Integer offset = stringOffsets.get(s);
+      if (offset == null) {
+        offset = stringTable.size();
+        try {
+          stringTable.writeUTF(s);
+        } catch (IOException ex) {
+          // only a string of more than 64K bytes cannot be written
+          throw new IllegalArgumentException("String too long for an SMAP index: " + s.length() + " chars");
+        }
+        stringOffsets.put(s, offset);
+      }
+      return offset;
+    }
+
+    int fileCount() {
+      return fileCount;
+    }
+
+    /**
+     * The extent of the tables, to roll back to if an SMAP cannot be
+     * added whole.  Its strings are left in the string table, where
+     * nothing refers to them.
+     */
+    int[] mark() {
+      return new int[] { smapCount, stratumCount, fileCount, lineCount, breakCount };
+    }
+
+    void rollback(int[] mark) {
+      smapCount = mark[0];
+      stratumCount = mark[1];
+      fileCount = mark[2];
+      lineCount = mark[3];
+      breakCount = mark[4];
+      while (names.size() > smapCount) {
+        names.remove(names.size() - 1);
+      }
+    }
+
+    int lineCount() {
+      return lineCount;
+    }
+
+    // the strata of the SMAP follow; its default is numbered among them
+    void startSMAP(String name, int defaultStratum) {
+      smaps = grow(smaps, 4 * (smapCount + 1));
+      int i = 4 * smapCount++;
+      names.add(name);
+      smaps[i] = string(name);
+      smaps[i + 1] = defaultStratum == -1? -1 : stratumCount + defaultStratum;
+      smaps[i + 2] = stratumCount;
+      smaps[i + 3] = 0;
+    }
+
+    // the files, lines and breaks of the stratum follow
+    void startStratum(String id) {
+      strata = grow(strata, 5 * (stratumCount + 1));
+      int i = 5 * stratumCount++;
+      strata[i] = string(id);
+      strata[i + 1] = fileCount;
+      strata[i + 2] = 0;
+      strata[i + 3] = breakCount;
+      strata[i + 4] = 0;
+      ++smaps[4 * (smapCount - 1) + 3];
+    }
+
+    void file(int fileId, String name, String path) {
+      files = grow(files, 3 * (fileCount + 1));
+      int i = 3 * fileCount++;
+      files[i] = fileId;
+      files[i + 1] = string(name);
+      files[i + 2] = string(path);
+      ++strata[5 * (stratumCount - 1) + 2];
+    }
+
+    void line(int jplsStart, int jplsLineInc, int njplsStart, int fileIndex) {
+      lines = grow(lines, 4 * (lineCount + 1));
+      int i = 4 * lineCount++;
+      lines[i] = jplsStart;
+      lines[i + 1] = jplsLineInc;
+      lines[i + 2] = njplsStart;
+      lines[i + 3] = fileIndex;
+    }
+
+    void jplsBreak(int jplsLine, int lineIndex) {
+      breaks = grow(breaks, 2 * (breakCount + 1));
+      int i = 2 * breakCount++;
+      breaks[i] = jplsLine;
+      breaks[i + 1] = lineIndex;
+      ++strata[5 * (stratumCount - 1) + 4];
+    }
+
+    private static void writeInts(DataOutputStream out, int[] table, int count) throws IOException {
+      for (int i = 0; i < count; ++i) {
+        out.writeInt(table[i]);
+      }
+    }
+
+    void write(Path file) throws IOException {
+      // the SMAPs in name order, for the binary search of findSMAP
+      Integer[] order = new Integer[smapCount];
+      for (int i = 0; i < smapCount; ++i) {
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        public int compare(Integer a, Integer b) {
+          return names.get(a).compareTo(names.get(b));
+        }
+      });
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+      try {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(0);
+        out.writeInt(smapCount);
+        out.writeInt(stratumCount);
+        out.writeInt(fileCount);
+        out.writeInt(lineCount);
+        out.writeInt(breakCount);
+        out.writeInt(stringTable.size());
+        for (int i : order) {
+          for (int k = 0; k < 4; ++k) {
+            out.writeInt(smaps[4 * i + k]);
+          }
+        }
+        writeInts(out, strata, 5 * stratumCount);
+        writeInts(out, files, 3 * fileCount);
+        writeInts(out, lines, 4 * lineCount);
+        writeInts(out, breaks, 2 * breakCount);
+        stringBytes.writeTo(out);
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  private final ByteBuffer index;
+  private final int smapCount;
+  private final int smapTable;
+  private final int stratumTable;
+  private final int fileTable;
+  private final int lineTable;
+  private final int breakTable;
+  private final int stringTable;
+
+  SMAPIndex(ByteBuffer index) throws IOException {
+    this.index = index;
+    if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC) {
+      throw new IOException("Not an SMAP index");
+    }
+    int version = index.getShort(4) & 0xFFFF;
+    if (version != VERSION) {
+      throw new IOException("Unsupported SMAP index version " + version);
+    }
+    smapCount = index.getInt(8);
+    smapTable = HEADER_SIZE;
+    stratumTable = smapTable + SMAP_SIZE * smapCount;
+    fileTable = stratumTable + STRATUM_SIZE * index.getInt(12);
+    lineTable = fileTable + FILE_SIZE * index.getInt(16);
+    breakTable = lineTable + LINE_SIZE * index.getInt(20);
+    stringTable = breakTable + BREAK_SIZE * index.getInt(24);
+    if ((long)stringTable + index.getInt(28) != index.capacity()) {
+      throw new IOException("SMAP index is truncated or corrupt");
+    }
+  }
+
+  /**
+   * Map an index file.  It stays mapped while the SMAPIndex is reachable.
+   */
+  static SMAPIndex open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("SMAP index too big to map: " + file);
+      }
+      return new SMAPIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Compare the string at an offset of the string table with a char
+   * sequence, decoding the modified UTF-8 a char at a time.
+   */
+  private int compareString(int offset, CharSequence s) {
+    int pos = stringTable + offset;
+    int end = pos + 2 + (index.getShort(pos) & 0xFFFF);
+    pos += 2;
+    int i = 0;
+    while (pos < end) {
+      int b = index.get(pos) & 0xFF;
+      char c;
+      if (b < 0x80) {
+        c = (char)b;
+        pos += 1;
+      } else if (b < 0xE0) {
+        c = (char)(((b & 0x1F) << 6) | (index.get(pos + 1) & 0x3F));
+        pos += 2;
+      } else {
+        c = (char)(((b & 0x0F) << 12) | ((index.get(pos + 1) & 0x3F) << 6) | (index.get(pos + 2) & 0x3F));
+        pos += 3;
+      }
+      if (i == s.length()) {
+        return 1;
+      }
+      if (c != s.charAt(i)) {
+        return c - s.charAt(i);
+      }
+      ++i;
+    }
+    return i == s.length()? 0 : -1;
+  }
+
+  private String string(int offset) {
+    if (offset == -1) {
+      return null;
+    }
+    int pos = stringTable + offset;
+    return VerifySMAP.decodeUTF8(index, pos + 2, pos + 2 + (index.getShort(pos) & 0xFFFF));
+  }
+
+  public int smapCount() {
+    return smapCount;
+  }
+
+  // the SMAPs are numbered in name order
+  public String smapName(int smap) {
+    return string(index.getInt(smapTable + SMAP_SIZE * smap));
+  }
+
+  /**
+   * The number of the SMAP of the given name, or -1 if there is none.
+   */
+  public int findSMAP(CharSequence name) {
+    int low = 0;
+    int high = smapCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = compareString(index.getInt(smapTable + SMAP_SIZE * mid), name);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * The stratum of an SMAP with the given id, or its default stratum
+   * if the id is null or not found, like VerifySMAP.stratumTableIndex.
+   */
+  public int stratumTableIndex(int smap, CharSequence stratumId) {
+    int record = smapTable + SMAP_SIZE * smap;
+    if (stratumId != null) {
+      int first = index.getInt(record + 8);
+      int end = first + index.getInt(record + 12);
+      for (int sti = first; sti < end; ++sti) {
+        if (compareString(index.getInt(stratumTable + STRATUM_SIZE * sti), stratumId) == 0) {
+          return sti;
+        }
+      }
+    }
+    return index.getInt(record + 4);
+  }
+
+  /**
+   * The line entry mapping a JPLS line in a stratum, or -1.
+   */
+  public int stiLineTableIndex(int sti, int jplsLine) {
+    int record = stratumTable + STRATUM_SIZE * sti;
+    int first = index.getInt(record + 12);
+    int low = first;
+    int high = first + index.getInt(record + 16) - 1;
+
+    /* find the last break at or before jplsLine */
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (index.getInt(breakTable + BREAK_SIZE * mid) <= jplsLine) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high < first? -1 : index.getInt(breakTable + BREAK_SIZE * high + 4);
+  }
+
+  public int stiLineNumber(int sti, int lti, int jplsLine) {
+    int record = lineTable + LINE_SIZE * lti;
+    return index.getInt(record + 8) + (jplsLine - index.getInt(record)) / index.getInt(record + 4);
+  }
+
+  /**
+   * The file of a stratum with the given FileId, or -1.
+   */
+  public int fileTableIndex(int sti, int fileId) {
+    int record = stratumTable + STRATUM_SIZE * sti;
+    int low = index.getInt(record + 4);
+    int high = low + index.getInt(record + 8) - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int id = index.getInt(fileTable + FILE_SIZE * mid);
+      if (id < fileId) {
+        low = mid + 1;
+      } else if (id > fileId) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  // the file of a line entry, or -1
+  public int stiFileTableIndex(int sti, int lti) {
+    return index.getInt(lineTable + LINE_SIZE * lti + 12);
+  }
+
+  /**
+   * Map a Java line of an SMAP like VerifySMAP.mapJavaLine: the file
+   * and input line are packed into the result, -1 if not mapped.
+   */
+  public long mapJavaLine(int smap, CharSequence stratumId, int javaLine) {
+    int sti = stratumTableIndex(smap, stratumId);
+    if (sti == -1) {
+      return -1;
+    }
+    int lti = stiLineTableIndex(sti, javaLine);
+    if (lti == -1) {
+      return -1;
+    }
+    int fti = stiFileTableIndex(sti, lti);
+    if (fti == -1) {
+      return -1;
+    }
+    return ((long)fti << 32) | stiLineNumber(sti, lti, javaLine);
+  }
+
+  public int fileId(int fileIndex) {
+    return index.getInt(fileTable + FILE_SIZE * fileIndex);
+  }
+
+  public String sourceName(int fileIndex) {
+    return string(index.getInt(fileTable + FILE_SIZE * fileIndex + 4));
+  }
+
+  // null if there is no AbsoluteFileName
+  public String sourcePath(int fileIndex) {
+    return string(index.getInt(fileTable + FILE_SIZE * fileIndex + 8));
+  }
+
+  /**
+   * The name an SMAP file is indexed by.
+   */
+  static String indexName(Path file, Path root) {
+    String name = (root == null? file : root.relativize(file)).toString().replace(File.separatorChar, '/');
+    int dot = name.lastIndexOf('.');
+    return dot > name.lastIndexOf('/')? name.substring(0, dot) : name;
+  }
+
+  /**
+   * Verify an SMAP or class file and add its tables to the index;
+   * false if it has no valid SMAP.  A class without one is passed over.
+   */
+  static boolean add(Writer writer, Path file, String name) throws IOException {
+    String source = file.toString();
+    int[] mark = writer.mark();
+    try {
+      VerifySMAP smap;
+      if (VerifySMAP.isResolved(source)) {
+        ByteBuffer sde = new VerifySMAP.ExtractSDE(source).findSDE(false);
+        if (sde == null) {
+          return false;
+        }
+        smap = new VerifySMAP(source, new VerifySMAP.ByteSequence(sde), true);
+        smap.decode();
+        smap.verify();
+      } else {
+        String resolved = VerifySMAP.resolve(source, new VerifySMAP.ByteSequence(VerifySMAP.mapWhole(source)));
+        smap = new VerifySMAP(source, resolved, false);
+        smap.decode();
+      }
+      smap.exportIndex(writer, name);
+      return true;
+    } catch (VerifySMAP.AssertionViolationException ex) {
+      System.err.println("SKIPPED " + source + ": assertion #" + ex.assertionNumber + " failed - " +
+                         ex.message);
+    } catch (VerifySMAP.ConfigurationException ex) {
+      System.err.println("SKIPPED " + source + ": Configuration error - " + ex.getMessage());
+    } catch (RuntimeException ex) {
+      System.err.println("SKIPPED " + source + ": " + ex);
+    }
+    // exportIndex may have failed partway
+    writer.rollback(mark);
+    return false;
+  }
+
+  static void query(String[] args) throws IOException {
+    if (args.length < 4 || args.length > 5) {
+      VerifySMAP.configError("SMAPIndex", "-query takes an index file, a name, a Java line and a stratum");
+    }
+    SMAPIndex index = open(Paths.get(args[1]));
+    int smap = index.findSMAP(args[2]);
+    if (smap == -1) {
+      System.out.println(args[2] + " is not in the index");
+      return;
+    }
+    long mapping = index.mapJavaLine(smap, args.length == 5? args[4] : null, Integer.parseInt(args[3]));
+    if (mapping == -1) {
+      System.out.println("Java line " + args[3] + " is not mapped");
+    } else {
+      int fileIndex = VerifySMAP.mappedFileIndex(mapping);
+      String path = index.sourcePath(fileIndex);
+      System.out.println(index.sourceName(fileIndex) + (path == null? "" : " (" + path + ")") +
+                         " line " + VerifySMAP.mappedLine(mapping));
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0 && args[0].equals("-query")) {
+      query(args);
+      return;
+    }
+    Path out = Paths.get("smap.index");
+    List<String> paths = new ArrayList<String>();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-o") && i + 1 < args.length) {
+        out = Paths.get(args[++i]);
+      } else if (args[i].startsWith("-")) {
+        VerifySMAP.configError("SMAPIndex", "Unknown option " + args[i]);
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (paths.isEmpty()) {
+      VerifySMAP.configError("SMAPIndex", "Must give the SMAP or class files to index");
+    }
+    long start = System.currentTimeMillis();
+    Writer writer = new Writer();
+    Set<String> names = new HashSet<String>();
+    int indexed = 0;
+    int skipped = 0;
+    for (String arg : paths) {
+      Path root = Files.isDirectory(Paths.get(arg))? Paths.get(arg) : null;
+      for (Path file : BatchVerifier.collect(new String[] { arg })) {
+        String name = indexName(file, root);
+        if (!names.add(name)) {
+          System.err.println("SKIPPED " + file + ": " + name + " is already indexed");
+          ++skipped;
+        } else if (add(writer, file, name)) {
+          ++indexed;
+        } else {
+          ++skipped;
+        }
+      }
+    }
+    writer.write(out);
+    System.out.println("Indexed " + indexed + " SMAPs (" + skipped + " skipped) in " + out + " (" +
+                       Files.size(out) + " bytes) in " + (System.currentTimeMillis() - start) + " ms");
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * A persistent cache of verification results, keyed by a hash of the
+ * SMAP bytes.  Files whose SMAP has not changed since the last run are
+ * not decoded or verified again.
+ *
+ * The cache file records a fingerprint of the verifier classes; a cache
+ * written by a different verifier is ignored.
+ */
+class VerificationCache {
+
+  private static final int MAGIC = 0x534D4143;   // "SMAC"
+  private static final int FORMAT_VERSION = 2;
+
+  /**
+   * The cache key: the hash and length of the SMAP, and the flags
+   * the result depends on.
+   */
+  static final class Key {
+    final long hash;
+    final int length;
+    final int flags;
+
+    Key(long hash, int length, int flags) {
+      this.hash = hash;
+      this.length = length;
+      this.flags = flags;
+    }
+
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key)obj;
+      return hash == other.hash && length == other.length && flags == other.flags;
+    }
+
+    public int hashCode() {
+      return (int)(hash ^ (hash >>> 32));
+    }
+  }
+
+  /**
+   * A cached violation; the source is filled in when it is used.
+   */
+  static final class Violation {
+    final int assertionNumber;
+    final String message;
+    final String detail;
+    final int lineNumber;
+
+    Violation(int assertionNumber, String message, String detail, int lineNumber) {
+      this.assertionNumber = assertionNumber;
+      this.message = message;
+      this.detail = detail;
+      this.lineNumber = lineNumber;
+    }
+  }
+
+  private final Path file;
+  private final long fingerprint;
+  private final Map<Key, Violation[]> entries = new ConcurrentHashMap<Key, Violation[]>();
+  private volatile boolean changed = false;
+
+  VerificationCache(Path file) {
+    this.file = file;
+    this.fingerprint = verifierFingerprint();
+  }
+
+  static int flags(boolean resolved, boolean collectAll) {
+    return (resolved? 1 : 0) | (collectAll? 2 : 0);
+  }
+
+  static Key key(ByteBuffer smap, boolean resolved, boolean collectAll) {
+    return new Key(hash(smap), smap.remaining(), flags(resolved, collectAll));
+  }
+
+  /**
+   * The cached result for the key, for the given source; null if the
+   * SMAP has not been verified before.
+   */
+  VerifySMAP.Result get(Key key, String source) {
+    Violation[] cached = entries.get(key);
+    if (cached == null) {
+      return null;
+    }
+    List<VerifySMAP.AssertionViolationException> violations =
+      new ArrayList<VerifySMAP.AssertionViolationException>(cached.length);
+    for (Violation v : cached) {
+      violations.add(new VerifySMAP.AssertionViolationException(v.assertionNumber, v.message,
+                                                                v.detail, source, v.lineNumber));
+    }
+    return new VerifySMAP.Result(source, violations);
+  }
+
+  void put(Key key, VerifySMAP.Result result) {
+    if (result.hasConfigurationError()) {
+      return;   // not a property of the SMAP
+    }
+    List<VerifySMAP.AssertionViolationException> violations = result.getViolations();
+    Violation[] cached = new Violation[violations.size()];
+    for (int i = 0; i < cached.length; ++i) {
+      VerifySMAP.AssertionViolationException v = violations.get(i);
+      cached[i] = new Violation(v.assertionNumber, v.message, v.detail, v.lineNumber);
+    }
+    entries.put(key, cached);
+    changed = true;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /**
+   * Load the cache file, if there is one written by this verifier.
+   */
+  void load() throws IOException {
+    if (!Files.isRegularFile(file)) {
+      return;
+    }
+    DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION ||
+          in.readLong() != fingerprint) {
+        return;
+      }
+      int count = in.readInt();
+      for (int i = 0; i < count; ++i) {
+        Key key = new Key(in.readLong(), in.readInt(), in.readUnsignedByte());
+        Violation[] violations = new Violation[in.readInt()];
+        for (int j = 0; j < violations.length; ++j) {
+          int assertionNumber = in.readInt();
+          String message = readString(in);
+          String detail = readString(in);
+          violations[j] = new Violation(assertionNumber, message, detail, in.readInt());
+        }
+        entries.put(key, violations);
+      }
+    } catch (EOFException ex) {
+      // a truncated cache - keep what was read
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Write the cache file if anything was added, replacing it atomically.
+   */
+  synchronized void save() throws IOException {
+    if (!changed) {
+      return;
+    }
+    Path absolute = file.toAbsolutePath();
+    Path temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+    try {
+      write(temp);
+      Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | RuntimeException ex) {
+      Files.deleteIfExists(temp);
+      throw ex;
+    }
+    changed = false;
+  }
+
+  private void write(Path temp) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(fingerprint);
+      out.writeInt(entries.size());
+      for (Map.Entry<Key, Violation[]> entry : entries.entrySet()) {
+        Key key = entry.getKey();
+        out.writeLong(key.hash);
+        out.writeInt(key.length);
+        out.writeByte(key.flags);
+        out.writeInt(entry.getValue().length);
+        for (Violation v : entry.getValue()) {
+          out.writeInt(v.assertionNumber);
+          writeString(out, v.message);
+          writeString(out, v.detail);
+          out.writeInt(v.lineNumber);
+        }
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /*
+   * Strings are UTF-8 with an int length, -1 for null: writeUTF is
+   * limited to 64K, and a message may quote that much of an SMAP.
+   */
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * A 64 bit hash of the remaining bytes, eight bytes at a time.
+   */
+  static long hash(ByteBuffer bytes) {
+    ByteBuffer b = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    long h = 0x9E3779B97F4A7C15L ^ b.remaining();
+    while (b.remaining() >= 8) {
+      h = Long.rotateLeft(h ^ (b.getLong() * 0xC2B2AE3D27D4EB4FL), 31) * 0x9E3779B97F4A7C15L;
+    }
+    while (b.hasRemaining()) {
+      h = Long.rotateLeft(h ^ ((b.get() & 0xFFL) * 0x165667B19E3779F9L), 23) * 0xC2B2AE3D27D4EB4FL;
+    }
+    // final avalanche
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * A hash of the classes that decide the results, so that a changed
+   * verifier does not use results cached by an older one: the jar the
+   * verifier was loaded from, or else all its VerifySMAP class files,
+   * nested and anonymous ones included.  If they cannot be read, the
+   * fingerprint is random and no cache is used.
+   */
+  static long verifierFingerprint() {
+    try {
+      Path location = Paths.get(VerifySMAP.class.getProtectionDomain().getCodeSource()
+                                .getLocation().toURI());
+      if (Files.isRegularFile(location)) {
+        return hash(ByteBuffer.wrap(Files.readAllBytes(location)));
+      }
+      List<Path> classes = new ArrayList<Path>();
+      try (DirectoryStream<Path> dir = Files.newDirectoryStream(location, "VerifySMAP*.class")) {
+        for (Path path : dir) {
+          classes.add(path);
+        }
+      }
+      if (classes.isEmpty()) {
+        throw new FileNotFoundException(location + "/VerifySMAP.class");
+      }
+      Collections.sort(classes);
+      long h = classes.size();
+      for (Path path : classes) {
+        h = Long.rotateLeft(h, 17) ^ hash(ByteBuffer.wrap(Files.readAllBytes(path)));
+      }
+      return h;
+    } catch (IOException | URISyntaxException | RuntimeException ex) {
+      return new Random().nextLong();
+    }
+  }
+}
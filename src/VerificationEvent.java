@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import jdk.jfr.*;
+
+/**
+ * A JFR event for the verification of the SMAP of one file, committed
+ * when a recording is on, e.g. with -XX:StartFlightRecording.  When no
+ * recording is on, committing it costs next to nothing.
+ */
+@Name("org.glassfish.dsol.Verification")
+@Label("SMAP Verification")
+@Category("Debugging Support TCK")
+@Description("The verification of the SMAP of one file, with the time of each phase")
+@StackTrace(false)
+class VerificationEvent extends Event {
+
+  @Label("Source")
+  String source;
+
+  @Label("Bytes Read")
+  @DataAmount
+  long bytes;
+
+  @Label("SMAP Size")
+  @DataAmount
+  long smapBytes;
+
+  @Label("Strata")
+  int strata;
+
+  @Label("Files")
+  int files;
+
+  @Label("Line Entries")
+  int lines;
+
+  @Label("Read Time")
+  @Timespan
+  long readNanos;
+
+  @Label("Extract Time")
+  @Description("Scanning the class file for the SourceDebugExtension")
+  @Timespan
+  long extractNanos;
+
+  @Label("Decode Time")
+  @Timespan
+  long decodeNanos;
+
+  @Label("Verify Time")
+  @Timespan
+  long verifyNanos;
+
+  @Label("Cached")
+  boolean cached;
+
+  @Label("Valid")
+  boolean valid;
+
+  @Label("Assertion")
+  @Description("The number of the first failed assertion, 0 if none failed")
+  int assertion;
+
+  static void commit(VerifySMAP.Result result) {
+    VerificationEvent event = new VerificationEvent();
+    if (!event.shouldCommit()) {
+      return;
+    }
+    VerifySMAP.Metrics metrics = result.metrics;
+    event.source = result.getSource();
+    event.bytes = metrics.bytes;
+    event.smapBytes = metrics.smapBytes;
+    event.strata = metrics.strata;
+    event.files = metrics.files;
+    event.lines = metrics.lines;
+    event.readNanos = metrics.readNanos;
+    event.extractNanos = metrics.extractNanos;
+    event.decodeNanos = metrics.decodeNanos;
+    event.verifyNanos = metrics.verifyNanos;
+    event.cached = metrics.cached;
+    event.valid = result.isValid();
+    event.assertion = result.getAssertionNumber();
+    event.commit();
+  }
+}
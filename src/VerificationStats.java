@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.io.PrintStream;
+
+/**
+ * The latency histograms and throughput of a batch run, printed with
+ * -stats.  Each phase has a histogram with a bucket per power of two
+ * microseconds, so adding a file is a few increments.
+ */
+class VerificationStats {
+
+  static final String[] PHASES = { "read", "extract", "decode", "verify", "total" };
+  private static final int BUCKETS = 40;
+
+  private final long[][] histograms = new long[PHASES.length][BUCKETS];
+  private final long[] totals = new long[PHASES.length];
+  private final long[] maxima = new long[PHASES.length];
+  private long count = 0;
+  private long bytes = 0;
+  private long cached = 0;
+
+  synchronized void add(VerifySMAP.Metrics metrics) {
+    ++count;
+    bytes += metrics.bytes;
+    if (metrics.cached) {
+      ++cached;
+    }
+    add(0, metrics.readNanos);
+    add(1, metrics.extractNanos);
+    add(2, metrics.decodeNanos);
+    add(3, metrics.verifyNanos);
+    add(4, metrics.readNanos + metrics.extractNanos + metrics.decodeNanos + metrics.verifyNanos);
+  }
+
+  private void add(int phase, long nanos) {
+    histograms[phase][bucket(nanos)]++;
+    totals[phase] += nanos;
+    maxima[phase] = Math.max(maxima[phase], nanos);
+  }
+
+  // bucket b holds times below 2^b microseconds
+  static int bucket(long nanos) {
+    long micros = nanos / 1000;
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+  }
+
+  // the upper bound of the bucket within which the given fraction of times fall
+  private long percentile(int phase, double fraction) {
+    long rank = (long)Math.ceil(count * fraction);
+    long seen = 0;
+    for (int b = 0; b < BUCKETS; ++b) {
+      seen += histograms[phase][b];
+      if (seen >= rank) {
+        return 1000L << b;
+      }
+    }
+    return maxima[phase];
+  }
+
+  static String time(long nanos) {
+    if (nanos < 1000000) {
+      return (nanos / 1000) + " us";
+    }
+    if (nanos < 10000000000L) {
+      return String.format("%.1f ms", nanos / 1e6);
+    }
+    return String.format("%.1f s", nanos / 1e9);
+  }
+
+  synchronized void print(PrintStream out, long millis) {
+    if (count == 0) {
+      return;
+    }
+    out.println("Latency per file (total of all phases):");
+    long[] total = histograms[PHASES.length - 1];
+    long most = 0;
+    for (long n : total) {
+      most = Math.max(most, n);
+    }
+    for (int b = 0; b < BUCKETS; ++b) {
+      if (total[b] == 0) {
+        continue;
+      }
+      StringBuilder bar = new StringBuilder();
+      for (long i = 0; i < (total[b] * 40 + most - 1) / most; ++i) {
+        bar.append('#');
+      }
+      out.println(String.format("  %10s - %-10s %8d %s", b == 0? "0" : time(1000L << (b - 1)),
+                                time(1000L << b), total[b], bar));
+    }
+    out.println(String.format("  %-8s %10s %10s %10s %10s %10s", "phase", "p50 <", "p90 <", "p99 <", "max", "total"));
+    for (int phase = 0; phase < PHASES.length; ++phase) {
+      out.println(String.format("  %-8s %10s %10s %10s %10s %10s", PHASES[phase],
+                                time(percentile(phase, 0.5)), time(percentile(phase, 0.9)),
+                                time(percentile(phase, 0.99)), time(maxima[phase]),
+                                time(totals[phase])));
+    }
+    double seconds = Math.max(millis, 1) / 1000.0;
+    out.println(String.format("Throughput: %.0f files/s, %.1f MB/s (%d files, %d bytes, %d from cache, %d ms)",
+                              count / seconds, bytes / seconds / (1024 * 1024),
+                              count, bytes, cached, millis));
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.*;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * A thin client of VerifyDaemon, for build scripts:
+ *
+ *     java VerifyClient [-port <port>] [-token <file>] <file, directory or glob>... 
+ *     java VerifyClient [-port <port>] [-token <file>] -resolved|-unresolved < SMAP
+ *     java VerifyClient [-port <port>] [-token <file>] -shutdown
+ *
+ * The files found are sent as pipelined requests on one thread while
+ * the answers are read on another, and printed as batch mode prints its
+ * results.  The daemon verifies files, not archives, so the entries of
+ * a WAR, EAR or JAR that batch mode would verify are sent instead, see
+ * sendArchive.  The exit status is 0 if every SMAP passed, 1 otherwise.
+ */
+class VerifyClient {
+
+  public static void main(String[] args) throws IOException {
+    int port = VerifyDaemon.DEFAULT_PORT;
+    Path tokenFile = null;
+    final List<String> paths = new ArrayList<String>();
+    String stdin = null;
+    boolean shutdown = false;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-port") && i + 1 < args.length) {
+        port = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-token") && i + 1 < args.length) {
+        tokenFile = Paths.get(args[++i]);
+      } else if (args[i].equals("-resolved")) {
+        stdin = "RESOLVED";
+      } else if (args[i].equals("-unresolved")) {
+        stdin = "SMAP";
+      } else if (args[i].equals("-shutdown")) {
+        shutdown = true;
+      } else {
+        paths.add(args[i]);
+      }
+    }
+    if (tokenFile == null) {
+      tokenFile = VerifyDaemon.defaultTokenFile(port);
+    }
+    long start = System.currentTimeMillis();
+    final String token;
+    try {
+      token = new String(Files.readAllBytes(tokenFile), StandardCharsets.US_ASCII).trim();
+    } catch (NoSuchFileException ex) {
+      VerifySMAP.configError("VerifyClient", "No VerifyDaemon token in " + tokenFile +
+                             " - start one with 'java VerifyDaemon'");
+      return;
+    }
+    final Socket socket;
+    try {
+      socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    } catch (ConnectException ex) {
+      VerifySMAP.configError("VerifyClient", "No VerifyDaemon on port " + port +
+                             " - start one with 'java VerifyDaemon'");
+      return;
+    }
+    final AtomicInteger skipped = new AtomicInteger();
+    final AtomicInteger tooBig = new AtomicInteger();
+    try {
+      final String request = shutdown? "SHUTDOWN" : stdin;
+      // send on another thread, so the answers are read meanwhile
+      FutureTask<Integer> sender = new FutureTask<Integer>(new Callable<Integer>() {
+        public Integer call() throws IOException {
+          OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+          out.write(("AUTH " + token + "\n").getBytes(StandardCharsets.UTF_8));
+          int requests = 0;
+          if ("SHUTDOWN".equals(request)) {
+            out.write("0 SHUTDOWN\n".getBytes(StandardCharsets.UTF_8));
+            ++requests;
+          } else if (request != null) {
+            byte[] smap = System.in.readAllBytes();
+            out.write(("0 " + request + " " + smap.length + " stdin\n").getBytes(StandardCharsets.UTF_8));
+            out.write(smap);
+            ++requests;
+          } else {
+            for (Path file : BatchVerifier.collect(paths.toArray(new String[paths.size()]))) {
+              String path = file.toAbsolutePath().toString();
+              if (ArchiveVerifier.isArchive(path)) {
+                InputStream in = new BufferedInputStream(Files.newInputStream(file));
+                try {
+                  requests = sendArchive(out, path, new ZipInputStream(in), requests, skipped, tooBig);
+                } finally {
+                  in.close();
+                }
+              } else {
+                out.write((requests++ + " FILE " + path + "\n").getBytes(StandardCharsets.UTF_8));
+              }
+            }
+          }
+          out.flush();
+          socket.shutdownOutput();
+          return requests;
+        }
+      });
+      Thread sending = new Thread(sender, "VerifyClient sender");
+      sending.setDaemon(true);
+      sending.start();
+      System.exit(printAnswers(socket.getInputStream(), sender, start, skipped, tooBig));
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Send the entries of an archive that batch mode would verify, see
+   * ArchiveVerifier: SMAPs, and classes with a SourceDebugExtension;
+   * classes without one are counted as skipped, and entries too big
+   * for a request as failed.  Returns the number of requests sent.
+   */
+  static int sendArchive(OutputStream out, String archiveName, ZipInputStream zin, int requests,
+                         AtomicInteger skipped, AtomicInteger tooBig) throws IOException {
+    ZipEntry entry;
+    while ((entry = zin.getNextEntry()) != null) {
+      if (entry.isDirectory()) {
+        continue;
+      }
+      String name = entry.getName();
+      String source = archiveName + "!/" + name;
+      if (ArchiveVerifier.isVerifiedEntry(archiveName, name)) {
+        byte[] bytes = zin.readNBytes(VerifyDaemon.MAX_REQUEST_BYTES + 1);
+        String kind = name.endsWith(".smap")? "SMAP" : "CLASS";
+        if (bytes.length > VerifyDaemon.MAX_REQUEST_BYTES) {
+          System.out.println("FAILED " + source + ": Configuration error - Too big to send to the daemon");
+          tooBig.incrementAndGet();
+        } else if (kind.equals("CLASS") && !hasSDE(source, bytes)) {
+          skipped.incrementAndGet();
+        } else {
+          out.write((requests++ + " " + kind + " " + bytes.length + " " + source + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+          out.write(bytes);
+        }
+      } else if (ArchiveVerifier.isNestedArchive(archiveName, name)) {
+        requests = sendArchive(out, source, new ZipInputStream(zin), requests, skipped, tooBig);
+      }
+    }
+    return requests;
+  }
+
+  // a class that cannot be read is sent, for the daemon to report
+  static boolean hasSDE(String source, byte[] classFile) {
+    try {
+      return new VerifySMAP.ExtractSDE(source, ByteBuffer.wrap(classFile)).findSDE(false) != null;
+    } catch (RuntimeException ex) {
+      return true;
+    }
+  }
+
+  /**
+   * Print the answers to the requests until the daemon closes the
+   * connection, returning the exit status.
+   */
+  static int printAnswers(InputStream in, Future<Integer> sender, long start,
+                          AtomicInteger skipped, AtomicInteger tooBig) throws IOException {
+    in = new BufferedInputStream(in);
+    int passed = 0;
+    int failed = 0;
+    String line;
+    while ((line = VerifyDaemon.readLine(in)) != null) {
+      String[] answer = line.split(" ", 3);
+      String kind = answer.length > 1? answer[1] : "";
+      String rest = answer.length > 2? answer[2] : "";
+      if (kind.equals("VIOLATION")) {
+        System.out.println("FAILED " + rest);
+      } else if (kind.equals("WARNING")) {
+        System.out.println("WARNING " + rest);
+      } else if (kind.equals("PASSED")) {
+        ++passed;
+      } else if (kind.equals("FAILED")) {
+        ++failed;
+      } else if (kind.equals("ERROR")) {
+        if (rest.startsWith("AUTH:")) {
+          VerifySMAP.configError("VerifyClient", "The daemon did not accept the token");
+        }
+        int colon = rest.indexOf(": ");
+        System.out.println("FAILED " + (colon < 0? rest : rest.substring(0, colon) +
+                                        ": Configuration error - " + rest.substring(colon + 2)));
+        ++failed;
+      }
+    }
+    int requests;
+    try {
+      requests = sender.get();
+    } catch (ExecutionException ex) {
+      throw new IOException("Could not send the requests", ex.getCause());
+    } catch (InterruptedException ex) {
+      throw new InterruptedIOException();
+    }
+    if (passed + failed < requests) {
+      System.out.println("The daemon closed the connection before answering every request");
+      failed = requests - passed;
+    }
+    failed += tooBig.get();
+    System.out.println("Verified " + (requests + tooBig.get()) + " SMAPs in " +
+                       (System.currentTimeMillis() - start) + " ms: " +
+                       passed + " passed, " + failed + " failed" +
+                       (skipped.get() == 0? "" : ", " + skipped.get() + " classes without SMAP skipped"));
+    return failed == 0? 0 : 1;
+  }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * Keeps a warmed up verifier resident, so that build steps need not
+ * each start a JVM and warm it up to verify a few SMAPs:
+ *
+ *     java VerifyDaemon [-port <port>] [-token <file>] [-all] [-analyze] [-cache <file>]
+ *
+ * It listens on the loopback interface only, and serves only clients
+ * that can read the token it writes to a file only its owner can read,
+ * by default ".verify-daemon-<port>.token" in the home directory.  The
+ * first line a client sends is "AUTH <token>"; otherwise the daemon
+ * closes the connection.  Requests are lines, each starting with an id
+ * chosen by the client; raw bytes follow the line for SMAP and CLASS
+ * requests:
+ *
+ *     <id> FILE <path>                   verify an SMAP or class file
+ *     <id> SMAP <length> <name>          verify the unresolved SMAP that follows
+ *     <id> RESOLVED <length> <name>      verify the resolved SMAP that follows
+ *     <id> CLASS <length> <name>         verify the SMAP of the class file that follows
+ *     <id> SHUTDOWN                      stop the daemon
+ *
+ * A client may send any number of requests without waiting, but must
+ * read the answers meanwhile: once MAX_PENDING answers are unwritten,
+ * the daemon reads no more requests from the client.  The requests are
+ * verified concurrently and each is answered as soon as it is done,
+ * so the answers may come in any order.  When the client shuts down its
+ * output, the daemon closes the connection after the last answer.  An answer is a block of
+ * lines starting with the id of its request:
+ *
+ *     <id> VIOLATION <source>: <description>     for each violation
+ *     <id> WARNING <source>: <warning>           for each warning (-analyze)
+ *     <id> PASSED <source> | FAILED <source> | ERROR <source>: <message>
+ *
+ * See VerifyClient for a client.
+ */
+class VerifyDaemon {
+
+  static final int DEFAULT_PORT = 7645;
+
+  // requests being verified per connection, so a client cannot flood the daemon
+  private static final int MAX_PENDING = 64;
+
+  // the largest SMAP or class file accepted as raw bytes
+  static final int MAX_REQUEST_BYTES = 64 * 1024 * 1024;
+
+  // the longest request line
+  private static final int MAX_LINE_BYTES = 64 * 1024;
+
+  private final BatchVerifier batch;
+  private final ExecutorService pool;
+  private final ServerSocket server;
+  private final Path tokenFile;
+  private final byte[] token;
+
+  VerifyDaemon(BatchVerifier batch, int port, Path tokenFile) throws IOException {
+    this.batch = batch;
+    this.pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    this.tokenFile = tokenFile;
+    this.token = writeToken(tokenFile);
+  }
+
+  // the default token file of the daemon on a port
+  static Path defaultTokenFile(int port) {
+    return Paths.get(System.getProperty("user.home"), ".verify-daemon-" + port + ".token");
+  }
+
+  /**
+   * Write a new random token to a file only the owner can read.
+   */
+  static byte[] writeToken(Path file) throws IOException {
+    byte[] random = new byte[32];
+    new SecureRandom().nextBytes(random);
+    StringBuilder hex = new StringBuilder();
+    for (byte b : random) {
+      hex.append(String.format("%02x", b & 0xFF));
+    }
+    byte[] token = hex.toString().getBytes(StandardCharsets.US_ASCII);
+    Files.deleteIfExists(file);
+    if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      // owner-only from the start, so the token is never readable by others
+      Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } else {
+      Files.createFile(file);
+      File f = file.toFile();
+      f.setReadable(false, false);
+      f.setWritable(false, false);
+      f.setReadable(true, true);
+      f.setWritable(true, true);
+    }
+    Files.write(file, token);
+    return token;
+  }
+
+  void serve() throws IOException {
+    System.out.println("Verifying SMAPs for requests on " + server.getLocalSocketAddress() +
+                       ", token in " + tokenFile);
+    while (!server.isClosed()) {
+      final Socket socket;
+      try {
+        socket = server.accept();
+      } catch (IOException ex) {
+        break;   // closed by a SHUTDOWN request
+      }
+      Thread connection = new Thread("VerifyDaemon " + socket.getRemoteSocketAddress()) {
+        public void run() {
+          try {
+            new Connection(socket).run();
+          } catch (IOException ex) {
+            // the client went away
+          } catch (InterruptedException ex) {
+            // shutting down
+          } finally {
+            try {
+              socket.close();
+            } catch (IOException ex) {
+              // nothing more to do
+            }
+          }
+        }
+      };
+      connection.setDaemon(true);
+      connection.start();
+    }
+    pool.shutdownNow();
+    Files.deleteIfExists(tokenFile);
+    if (batch.cache != null) {
+      batch.cache.save();
+    }
+  }
+
+  /**
+   * The requests of one client: read on the connection's thread,
+   * verified on the pool, and answered by the connection's writer
+   * thread as they are done, so that the pool never waits on a client.
+   * Every request holds a permit until its answer is written.
+   */
+  class Connection {
+    private final InputStream in;
+    private final Writer out;
+    private final Semaphore pending = new Semaphore(MAX_PENDING);
+    private final BlockingQueue<String> answers = new LinkedBlockingQueue<String>();
+    private final Thread writer;
+
+    Connection(Socket socket) throws IOException {
+      in = new BufferedInputStream(socket.getInputStream());
+      out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+      writer = new Thread("VerifyDaemon writer " + socket.getRemoteSocketAddress()) {
+        public void run() {
+          write();
+        }
+      };
+      writer.setDaemon(true);
+    }
+
+    void run() throws IOException, InterruptedException {
+      writer.start();
+      try {
+        if (authenticated()) {
+          read();
+        }
+      } finally {
+        // let the answers to the requests read be written
+        pending.acquire(MAX_PENDING);
+        writer.interrupt();
+        writer.join();
+      }
+    }
+
+    /**
+     * Write the answers as they come, flushing when there are no more
+     * for now.  If the client went away, they are dropped.
+     */
+    void write() {
+      boolean open = true;
+      try {
+        while (true) {
+          String answer = answers.take();
+          if (open) {
+            try {
+              out.write(answer);
+              if (answers.isEmpty()) {
+                out.flush();
+              }
+            } catch (IOException ex) {
+              open = false;   // the client went away
+            }
+          }
+          pending.release();
+        }
+      } catch (InterruptedException ex) {
+        // the connection is done
+      }
+    }
+
+    boolean authenticated() throws IOException, InterruptedException {
+      String line = readLine(in);
+      byte[] given = line != null && line.startsWith("AUTH ")?
+        line.substring(5).getBytes(StandardCharsets.US_ASCII) : new byte[0];
+      if (MessageDigest.isEqual(given, token)) {
+        return true;
+      }
+      answer("0", "ERROR AUTH: Bad token");
+      return false;
+    }
+
+    void read() throws IOException, InterruptedException {
+      String line;
+      while ((line = readLine(in)) != null) {
+        if (line.length() == 0) {
+          continue;
+        }
+        String[] request = line.split(" ", 3);
+        final String id = request[0];
+        String command = request.length > 1? request[1] : "";
+        String argument = request.length > 2? request[2] : "";
+        if (command.equals("SHUTDOWN")) {
+          answer(id, "PASSED shutdown");
+          // wait until this and the earlier answers are written
+          pending.acquire(MAX_PENDING);
+          pending.release(MAX_PENDING);
+          server.close();
+          return;
+        } else if (command.equals("FILE")) {
+          final String path = argument;
+          verify(id, path, new Verification() {
+            public VerifySMAP.Result run() throws IOException {
+              return batch.checkFile(path);
+            }
+          });
+        } else if (command.equals("SMAP") || command.equals("RESOLVED") ||
+                   command.equals("CLASS")) {
+          String[] lengthName = argument.split(" ", 2);
+          int length;
+          try {
+            length = Integer.parseInt(lengthName[0]);
+          } catch (NumberFormatException ex) {
+            answer(id, "ERROR " + line + ": Bad length");
+            return;   // cannot find the next request
+          }
+          if (length < 0 || length > MAX_REQUEST_BYTES) {
+            answer(id, "ERROR " + line + ": Bad length");
+            return;
+          }
+          final String name = lengthName.length > 1? lengthName[1] : "SMAP";
+          byte[] bytes = new byte[length];
+          if (in.readNBytes(bytes, 0, length) != length) {
+            return;
+          }
+          final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+          if (command.equals("CLASS")) {
+            verify(id, name, new Verification() {
+              public VerifySMAP.Result run() {
+                return batch.checkClass(name, buffer, true);
+              }
+            });
+          } else {
+            final boolean resolved = command.equals("RESOLVED");
+            verify(id, name, new Verification() {
+              public VerifySMAP.Result run() {
+                return batch.check(name, buffer, resolved);
+              }
+            });
+          }
+        } else {
+          answer(id, "ERROR " + line + ": Unknown request");
+        }
+      }
+    }
+
+    void verify(final String id, final String source, final Verification verification)
+      throws InterruptedException {
+      pending.acquire();
+      try {
+        pool.execute(new Runnable() {
+          public void run() {
+            VerifySMAP.Result result;
+            try {
+              result = verification.run();
+            } catch (IOException ex) {
+              result = VerifySMAP.Result.configurationError(source, ex.toString());
+            } catch (VerifySMAP.ConfigurationException ex) {
+              result = VerifySMAP.Result.configurationError(source, ex.getMessage());
+            } catch (RuntimeException ex) {
+              result = VerifySMAP.Result.configurationError(source, ex.toString());
+            }
+            answers.add(answer(id, result));
+          }
+        });
+      } catch (RejectedExecutionException ex) {
+        pending.release();
+        throw new InterruptedException("shutting down");
+      }
+    }
+
+    // an answer of the reader itself, which holds a permit like a request
+    void answer(String id, String last) throws InterruptedException {
+      pending.acquire();
+      answers.add(id + ' ' + last + '\n');
+    }
+
+    /**
+     * The answer to a request: the lines of a result.
+     */
+    String answer(String id, VerifySMAP.Result result) {
+      StringBuilder sb = new StringBuilder();
+      VerificationEvent.commit(result);
+      String source = result.getSource();
+      for (VerifySMAP.AssertionViolationException violation : result.getViolations()) {
+        sb.append(id).append(" VIOLATION ").append(source).append(": ")
+          .append(BatchVerifier.describe(violation)).append('\n');
+      }
+      for (String warning : result.getWarnings()) {
+        sb.append(id).append(" WARNING ").append(source).append(": ").append(warning).append('\n');
+      }
+      String last;
+      if (result.hasConfigurationError()) {
+        last = "ERROR " + source + ": " + result.getConfigurationError();
+      } else {
+        last = (result.isValid()? "PASSED " : "FAILED ") + source;
+      }
+      return sb.append(id).append(' ').append(last).append('\n').toString();
+    }
+  }
+
+  interface Verification {
+    VerifySMAP.Result run() throws IOException;
+  }
+
+  /**
+   * Read a line of UTF-8 ending in LF, or null at the end of the stream.
+   */
+  static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b == -1) {
+        return line.size() == 0? null : line.toString("UTF-8");
+      }
+      if (b != '\r') {
+        if (line.size() == MAX_LINE_BYTES) {
+          throw new IOException("Line too long");
+        }
+        line.write(b);
+      }
+    }
+    return line.toString("UTF-8");
+  }
+
+  public static void main(String[] args) throws IOException {
+    BatchVerifier batch = new BatchVerifier();
+    int port = DEFAULT_PORT;
+    Path tokenFile = null;
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-port") && i + 1 < args.length) {
+        port = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-token") && i + 1 < args.length) {
+        tokenFile = Paths.get(args[++i]);
+      } else if (args[i].equals("-all")) {
+        batch.collectAll = true;
+      } else if (args[i].equals("-analyze")) {
+        batch.analyze = true;
+      } else if (args[i].equals("-cache") && i + 1 < args.length) {
+        batch.cache = new VerificationCache(Paths.get(args[++i]));
+        batch.cache.load();
+      } else {
+        VerifySMAP.configError("VerifyDaemon", "Unknown option " + args[i]);
+      }
+    }
+    new VerifyDaemon(batch, port, tokenFile == null? defaultTokenFile(port) : tokenFile).serve();
+  }
+}
@@ -15,7 +15,13 @@
  */
 
 import java.util.*;    
+import java.util.concurrent.*;
 import java.io.*; 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 
 class VerifySMAP {
 
@@ -24,21 +30,9 @@ class VerifySMAP {
   private static final int INIT_SIZE_STRATUM = 3;
   
   static final String BASE_STRATUM_NAME = "Java";
-  
-  private class FileTableRecord {
-    int fileId;
-    String sourceName;
-    String sourcePath; 
-  }
-  
-  private class LineTableRecord {
-    int jplsStart;
-    int jplsEnd;
-    int jplsLineInc;
-    int njplsStart;
-    int njplsEnd;
-    int fileId;
-  }
+
+  // smaller SMAPs are not worth decoding in parallel
+  static final int PARALLEL_SIZE = 256 * 1024;
   
   private class StratumTableRecord {
     String id;
@@ -46,69 +40,471 @@ class VerifySMAP {
     int lineIndex;
     int fileSectionCount;
     int lineSectionCount;
+    FileIdMap fileIds;
+  }
+
+  /**
+   * Maps the FileIds of a stratum to their file table index.
+   * Open addressing over primitive arrays, so nothing is boxed.
+   */
+  static class FileIdMap {
+    private int[] keys = new int[16];
+    private int[] values = new int[16];   // -1 marks an empty slot
+    private int size = 0;
+
+    FileIdMap() {
+      Arrays.fill(values, -1);
+    }
+
+    private int slot(int key) {
+      int mask = keys.length - 1;
+      int h = key * 0x9E3779B9;
+      int i = (h ^ (h >>> 16)) & mask;
+      while (values[i] != -1 && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      return i;
+    }
+
+    // the file table index of the FileId, or -1 if not present
+    int get(int key) {
+      return values[slot(key)];
+    }
+
+    // the first index stored for a FileId is kept
+    void putIfAbsent(int key, int value) {
+      int i = slot(key);
+      if (values[i] != -1) {
+        return;
+      }
+      keys[i] = key;
+      values[i] = value;
+      if (++size * 2 > keys.length) {
+        rehash();
+      }
+    }
+
+    private void rehash() {
+      int[] oldKeys = keys;
+      int[] oldValues = values;
+      keys = new int[oldKeys.length * 2];
+      values = new int[oldValues.length * 2];
+      Arrays.fill(values, -1);
+      for (int i = 0; i < oldKeys.length; ++i) {
+        if (oldValues[i] != -1) {
+          int j = slot(oldKeys[i]);
+          keys[j] = oldKeys[i];
+          values[j] = oldValues[i];
+        }
+      }
+    }
   }
         
-  static void configError(String msg) {
-    System.err.println(source + ": Configuration error - " + msg);
-    throw new RuntimeException(msg);
+  /**
+   * The file could not be verified at all: it cannot be read, is not
+   * a class file or has no SMAP.  The message is never null.
+   */
+  static class ConfigurationException extends RuntimeException {
+    final String source;
+
+    ConfigurationException(String source, String msg) {
+      super(msg);
+      this.source = source;
+    }
+
+    void report(PrintStream err) {
+      err.println(source + ": Configuration error - " + getMessage());
+    }
+  }
+
+  // a tool cannot go on: report and stop
+  static void configError(String source, String msg) {
+    ConfigurationException ex = new ConfigurationException(source, msg);
+    ex.report(System.err);
+    throw ex;
+  }
+
+  // a file cannot be verified: that is its result, which the caller reports
+  static void fileError(String source, String msg) {
+    throw new ConfigurationException(source, msg);
+  }
+
+  /**
+   * Map a file into memory, read-only.
+   */
+  static ByteBuffer mapWhole(String pn) throws IOException {
+    File inFile = new File(pn);
+    if (!inFile.exists()) {
+      fileError(pn, "File does not exists");
+    }
+    FileChannel channel = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+    try {
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE) {
+        fileError(pn, "File too big to verify");
+      }
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      channel.close();
+    }
   }
 
-  static byte[] readWhole(String pn) throws IOException {
+  /**
+   * Read a file into the heap.  Unlike a mapping, this is safe for a
+   * file that may be truncated while it is read: the bytes are then
+   * short, where a mapped read would fault.
+   */
+  static ByteBuffer readWhole(String pn) throws IOException {
     File inFile = new File(pn);
     if (!inFile.exists()) {
-      configError("File does not exists");
+      fileError(pn, "File does not exists");
+    }
+    FileChannel channel = FileChannel.open(inFile.toPath(), StandardOpenOption.READ);
+    try {
+      long length = channel.size();
+      if (length > Integer.MAX_VALUE) {
+        fileError(pn, "File too big to verify");
+      }
+      ByteBuffer bytes = ByteBuffer.allocate((int)length);
+      while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+        // read on
+      }
+      bytes.flip();
+      return bytes;
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * The text of an SMAP as the parser reads it.  The parser looks at
+   * one char at a time, and the SMAP syntax is ASCII, so a byte may
+   * stand for a char; only the ranges taken as names or ids are
+   * decoded.  Unlike a CharSequence, the length need not be known,
+   * nor the text all held at once.
+   */
+  interface SMAPText {
+    /**
+     * The length, or Integer.MAX_VALUE if it is not known.
+     */
+    int length();
+
+    /**
+     * Is there a char at the position?  May read up to it.
+     */
+    boolean available(int index);
+
+    char charAt(int index);
+
+    String text(int start, int end);
+  }
+
+  // a CharSequence as SMAPText
+  static class CharText implements SMAPText {
+    private final CharSequence chars;
+
+    CharText(CharSequence chars) {
+      this.chars = chars;
     }
-    long length = inFile.length();
-    if (length > Integer.MAX_VALUE) {
-      configError("File too big to verify");
+
+    public int length() {
+      return chars.length();
+    }
+
+    public boolean available(int index) {
+      return index < chars.length();
+    }
+
+    public char charAt(int index) {
+      return chars.charAt(index);
+    }
+
+    public String text(int start, int end) {
+      return chars.subSequence(start, end).toString();
+    }
+  }
+
+  static SMAPText text(CharSequence smap) {
+    return smap instanceof SMAPText? (SMAPText)smap : new CharText(smap);
+  }
+
+  /**
+   * A CharSequence view of SMAP bytes, so that the parser can work on
+   * a SourceDebugExtension without first copying it into a String.
+   * The SMAP syntax is ASCII, so each byte is a char for parsing;
+   * only the sub-sequences turned into Strings are decoded.
+   */
+  static class ByteSequence implements CharSequence, SMAPText {
+    private final ByteBuffer bytes;   // position 0, limit is the length
+
+    ByteSequence(ByteBuffer bytes) {
+      this.bytes = bytes.slice();
+    }
+
+    public int length() {
+      return bytes.limit();
+    }
+
+    public char charAt(int index) {
+      return (char)(bytes.get(index) & 0xFF);
+    }
+
+    public CharSequence subSequence(int start, int end) {
+      ByteBuffer sub = bytes.duplicate();
+      sub.position(start);
+      sub.limit(end);
+      return new ByteSequence(sub);
+    }
+
+    public String toString() {
+      return text(0, length());
+    }
+
+    public boolean available(int index) {
+      return index < bytes.limit();
+    }
+
+    public String text(int start, int end) {
+      return decodeUTF8(bytes, start, end);
+    }
+  }
+
+  /**
+   * An SMAP read from a channel in chunks, so that an SMAP of any size
+   * is verified in bounded memory.  Only a window of the bytes is kept,
+   * from the start of the line before the one being read, which is as
+   * far back as the parser looks; the window grows only for lines
+   * longer than it.  Positions are from the start of the stream; the
+   * length is not known until the end is read.
+   */
+  static class StreamText implements SMAPText {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel in;
+    private ByteBuffer window = ByteBuffer.allocate(2 * CHUNK_SIZE);  // bytes up to position()
+    private int base = 0;   // the stream position of the window's first byte
+    private boolean eof = false;
+
+    StreamText(ReadableByteChannel in) {
+      this.in = in;
+    }
+
+    // not known until the end is read
+    public int length() {
+      return Integer.MAX_VALUE;
+    }
+
+    public char charAt(int index) {
+      if (!available(index)) {
+        throw new IndexOutOfBoundsException("past the end of the SMAP: " + index);
+      }
+      return (char)(window.get(index - base) & 0xFF);
+    }
+
+    public String text(int start, int end) {
+      available(end - 1);
+      return decodeUTF8(window, start - base, end - base);
+    }
+
+    public boolean available(int index) {
+      while (index - base >= window.position()) {
+        if (eof) {
+          return false;
+        }
+        if (!window.hasRemaining()) {
+          makeRoom();
+        }
+        try {
+          if (in.read(window) < 0) {
+            eof = true;
+          }
+        } catch (IOException ex) {
+          throw new UncheckedIOException(ex);
+        }
+      }
+      return true;
     }
-    int len = (int)length;
-    FileInputStream inStream = new FileInputStream(inFile);
-    byte[] bytes = new byte[len];
-    if (inStream.read(bytes, 0, len) != len) {
-      configError("unexpected size of read file, expected size: " + len);
+
+    private void makeRoom() {
+      // keep from after the third line end back, CR and LF counted apart
+      int keep = window.position();
+      for (int ends = 0; keep > 0 && ends < 3; --keep) {
+        byte b = window.get(keep - 1);
+        if (b == '\n' || b == '\r') {
+          ++ends;
+        }
+      }
+      if (keep > 0) {
+        window.flip();
+        window.position(keep);
+        window.compact();
+        base += keep;
+      }
+      if (window.remaining() < CHUNK_SIZE) {
+        if ((long)base + 2L * window.capacity() > Integer.MAX_VALUE) {
+          throw new UncheckedIOException(new IOException("SMAP too big to verify"));
+        }
+        ByteBuffer bigger = ByteBuffer.allocate(window.capacity() * 2);
+        window.flip();
+        bigger.put(window);
+        window = bigger;
+      }
+    }
+  }
+
+  /**
+   * Decode modified UTF-8, the encoding of a SourceDebugExtension (JVM
+   * Spec 4.4.7): NUL may take two bytes, and a supplementary character
+   * is a surrogate pair of three bytes each.  The four byte form of
+   * standard UTF-8, which ".smap" files may have, is decoded too.
+   * A malformed byte decodes to U+FFFD.
+   */
+  static String decodeUTF8(ByteBuffer bytes, int start, int end) {
+    char[] chars = new char[end - start];
+    int count = 0;
+    int i = start;
+    while (i < end) {
+      int b = bytes.get(i) & 0xFF;
+      if (b < 0x80) {
+        chars[count++] = (char)b;
+        ++i;
+        continue;
+      }
+      int len = b >= 0xF8? 0 : b >= 0xF0? 4 : b >= 0xE0? 3 : b >= 0xC0? 2 : 0;
+      int cp = b & (0x3F >> (len - 1));
+      for (int k = 1; k < len; ++k) {
+        int c = i + k < end? bytes.get(i + k) & 0xFF : 0;
+        if ((c & 0xC0) != 0x80) {
+          len = 0;
+          break;
+        }
+        cp = (cp << 6) | (c & 0x3F);
+      }
+      if (len == 0) {
+        chars[count++] = '\uFFFD';
+        ++i;
+      } else if (len == 4) {
+        chars[count++] = Character.highSurrogate(cp);
+        chars[count++] = Character.lowSurrogate(cp);
+        i += 4;
+      } else {
+        chars[count++] = (char)cp;
+        i += len;
+      }
     }
-    inStream.close();
-    return bytes;
+    return new String(chars, 0, count);
   }
 
   static class ExtractSDE {
     static final String nameSDE = "SourceDebugExtension";
-
-    final byte[] classFile;
-    int classFilePos = 0;
+    static final byte[] nameSDEBytes = nameSDE.getBytes(StandardCharsets.US_ASCII);
+    static final byte[] nameCodeBytes = "Code".getBytes(StandardCharsets.US_ASCII);
+    static final byte[] nameLineNumberTableBytes = 
+      "LineNumberTable".getBytes(StandardCharsets.US_ASCII);
+
+    final String source;
+    final ByteBuffer classFile;
+
+    // if not null, the lines of the methods' LineNumberTables are
+    // collected here while the class file is scanned for the SDE
+    BitSet javaLines = null;
+
+    private int cpIndexCode = 0;
+    private int cpIndexLineNumberTable = 0;
+    private int majorVersion = 0;
+
+    // per constant pool tag: the size of an entry after its tag, 0 for
+    // Utf8 (whose length follows the tag), -1 for an unknown tag
+    private static final int[] CP_ENTRY_SIZE = new int[21];
+
+    // per constant pool tag: the first class file version allowing it
+    private static final int[] CP_ENTRY_SINCE = new int[21];
+
+    static {
+      Arrays.fill(CP_ENTRY_SIZE, -1);
+      cpEntry(1, 0, 45);   // Utf8
+      cpEntry(3, 4, 45);   // Integer
+      cpEntry(4, 4, 45);   // Float
+      cpEntry(5, 8, 45);   // Long
+      cpEntry(6, 8, 45);   // Double
+      cpEntry(7, 2, 45);   // Class
+      cpEntry(8, 2, 45);   // String
+      cpEntry(9, 4, 45);   // Field
+      cpEntry(10, 4, 45);  // Method
+      cpEntry(11, 4, 45);  // InterfaceMethod
+      cpEntry(12, 4, 45);  // NameAndType
+      cpEntry(15, 3, 51);  // MethodHandle
+      cpEntry(16, 2, 51);  // MethodType
+      cpEntry(17, 4, 55);  // Dynamic
+      cpEntry(18, 4, 51);  // InvokeDynamic
+      cpEntry(19, 2, 53);  // Module
+      cpEntry(20, 2, 53);  // Package
+    }
+
+    private static void cpEntry(int tag, int size, int since) {
+      CP_ENTRY_SIZE[tag] = size;
+      CP_ENTRY_SINCE[tag] = since;
+    }
 
     ExtractSDE(String inName) throws IOException {
-      // get the bytes
-      classFile = readWhole(inName);
+      // map the bytes
+      this(inName, mapWhole(inName));
+    }
+
+    ExtractSDE(String inName, ByteBuffer classFile) {
+      source = inName;
+      this.classFile = classFile.duplicate();
+    }
+
+    void fileError(String msg) {
+      VerifySMAP.fileError(source, msg);
     }
 
     String parseClassFile() {
+      return new ByteSequence(findSDE()).toString();
+    }
+
+    ByteBuffer findSDE() {
+      return findSDE(true);
+    }
+
+    /**
+     * Return the value of the SourceDebugExtension attribute, as a
+     * slice of the class file bytes.  If there is none, that is a
+     * configuration error if it is required, otherwise null is returned.
+     */
+    ByteBuffer findSDE(boolean required) {
       long magic = readU4();
       if (magic != 0xCAFEBABEL) {
-        configError("class file not in Java Virtual Machine class file format - bad value of magic: 0x" + 
+        fileError("class file not in Java Virtual Machine class file format - bad value of magic: 0x" + 
                     Long.toHexString(magic));
       }
-      skip(2 + 2); // min/maj version
+      skip(2); // minor version
+      majorVersion = readU2();
       int cpIndexSDE = readConstantPool();
       if (cpIndexSDE == 0) {
-        configError("No Source Debug Extension in this class file (attribute name not defined)");
+        if (!required) {
+          return null;
+        }
+        fileError("No Source Debug Extension in this class file (attribute name not defined)");
       }
       skip(2 + 2 + 2);  // access, this, super
       int interfaceCount = readU2();
       skip(interfaceCount * 2);
       skipMembers(); // fields
-      skipMembers(); // methods
+      readMethods();
       int attrCount = readU2();
       for (int i = 0; i < attrCount; ++i) {
-        String sde = readAttr(cpIndexSDE);
+        ByteBuffer sde = readAttr(cpIndexSDE);
         if (sde != null) {
           // we found the SDE
           return sde;
         }
       }
-      configError("No Source Debug Extension in this class file");
-      return null; // not reached
+      if (required) {
+        fileError("No Source Debug Extension in this class file");
+      }
+      return null;
     }
 
     void skipMembers() {
@@ -122,18 +518,63 @@ class VerifySMAP {
       }
     }
 
+    // skip the methods, collecting their lines if javaLines is set
+    void readMethods() {
+      if (javaLines == null) {
+        skipMembers();
+        return;
+      }
+      int count = readU2();
+      for (int i = 0; i < count; ++i) {
+        skip(6); // access, name, descriptor
+        int attrCount = readU2();
+        for (int j = 0; j < attrCount; ++j) {
+          int name = readU2();
+          int len = readLength();
+          if (name == cpIndexCode) {
+            readCode(len);
+          } else {
+            skip(len);
+          }
+        }
+      }
+    }
+
+    void readCode(int len) {
+      int end = classFile.position() + len;
+      skip(2 + 2);  // max stack, max locals
+      int codeLength = readLength();
+      skip(codeLength);
+      int exceptionTableLength = readU2();
+      skip(exceptionTableLength * 8);
+      int attrCount = readU2();
+      for (int i = 0; i < attrCount; ++i) {
+        int name = readU2();
+        int attrLen = readLength();
+        if (name == cpIndexLineNumberTable) {
+          int lineCount = readU2();
+          for (int j = 0; j < lineCount; ++j) {
+            skip(2);  // start pc
+            javaLines.set(readU2());
+          }
+        } else {
+          skip(attrLen);
+        }
+      }
+      classFile.position(end);
+    }
+
     void skipAttr() {
       skip(2);  // name
-      int len = (int)readU4();
-      skip(len);
+      skip(readLength());
     }
 
-    String readAttr(int cpIndexSDE) {
+    ByteBuffer readAttr(int cpIndexSDE) {
       int name = readU2();
-      int len = (int)readU4();
+      int len = readLength();
       if (name == cpIndexSDE) {
         // this is the SDE attribute - return the value
-        return read(len);
+        return slice(len);
       } else {
         // this is some attribute we don't care about
         skip(len);
@@ -141,235 +582,622 @@ class VerifySMAP {
       }
     }
 
+    // the class file must have count more bytes
+    void need(long count) {
+      if (count > classFile.remaining()) {
+        fileError("bad class file - truncated at byte " + classFile.position());
+      }
+    }
+
     int readU1() {
-      return ((int)classFile[classFilePos++]) & 0xFF;
+      need(1);
+      return ((int)classFile.get()) & 0xFF;
     }
 
     int readU2() {
-      int res = readU1();
-      return (res << 8) + readU1();
+      need(2);
+      return ((int)classFile.getShort()) & 0xFFFF;
     }
     
     long readU4() {
-      long res = readU2();
-      return (res << 16) + readU2();
+      need(4);
+      return ((long)classFile.getInt()) & 0xFFFFFFFFL;
     }
-    
-    String read(int count) {
-      byte[] result = new byte[count];
-      for (int i = 0; i < count; ++i) {
-        result[i] = classFile[classFilePos++];
+
+    // a u4 length, which must not go past the end of the class file
+    int readLength() {
+      long len = readU4();
+      if (len > classFile.remaining()) {
+        fileError("bad class file - length " + len + " goes past the end of the class file");
       }
-      return new String(result);
+      return (int)len;
+    }
+    
+    ByteBuffer slice(int count) {
+      need(count);
+      ByteBuffer result = classFile.slice();
+      result.limit(count);
+      skip(count);
+      return result;
     }
     
     void skip(int count) {
-      classFilePos += count;
+      need(count);
+      classFile.position(classFile.position() + count);
+    }
+
+    // does the Utf8 of the given length at the current position spell the name
+    boolean matchesName(int len, byte[] name) {
+      if (len != name.length) {
+        return false;
+      }
+      int pos = classFile.position();
+      for (int i = 0; i < len; ++i) {
+        if (classFile.get(pos + i) != name[i]) {
+          return false;
+        }
+      }
+      return true;
     }
     
-    // read the constant pool and return the index of the SDE utf8
+    /**
+     * Read the constant pool and return the index of the SDE utf8.
+     * Entries are skipped by the size their tag has in CP_ENTRY_SIZE;
+     * only the Utf8 entries are looked at, and those are not decoded.
+     */
     int readConstantPool() {
       int cpIndexSDE =  0;
       int constantPoolCount = readU2();
-      // read const pool - look for SDE
       // note: index zero is not in class file
       for (int i = 1; i < constantPoolCount; ++i) {
         int tag = readU1();
-        switch (tag) {
-        case 7:  // Class
-        case 8:  // String
-          skip(2); 
-          break;
-        case 9:  // Field
-        case 10: // Method
-        case 11: // InterfaceMethod
-        case 3:  // Integer
-        case 4:  // Float
-        case 12: // NameAndType
-          skip(4); 
-          break;
-        case 5:  // Long
-        case 6:  // Double
-          skip(8); 
-          ++i; // see VM Spec 2nd ed. 4.4.5
-          break;
-        case 1:  // Utf8
-          int len = readU2(); 
-          String utf8 = read(len);
-          if (utf8.equals(nameSDE)) {
-            cpIndexSDE = i;
+        int size = tag < CP_ENTRY_SIZE.length? CP_ENTRY_SIZE[tag] : -1;
+        if (size == -1) {
+          fileError("bad class file - unexpected constant pool tag: " + tag); 
+        }
+        if (majorVersion < CP_ENTRY_SINCE[tag]) {
+          fileError("bad class file - constant pool tag " + tag + 
+                      " is not allowed in class file version " + majorVersion);
+        }
+        if (size != 0) {
+          skip(size);
+          if (tag == 5 || tag == 6) {
+            ++i; // Long and Double take two entries, see VM Spec 4.4.5
           }
-          break;
-        default: 
-          configError("bad class file - unexpected constant pool tag: " + tag); 
-          break;
+          continue;
+        }
+        // Utf8
+        int len = readU2(); 
+        need(len);
+        if (matchesName(len, nameSDEBytes)) {
+          cpIndexSDE = i;
+        } else if (matchesName(len, nameCodeBytes)) {
+          cpIndexCode = i;
+        } else if (matchesName(len, nameLineNumberTableBytes)) {
+          cpIndexLineNumberTable = i;
         }
+        skip(len);
       }
       return cpIndexSDE;
     }
   }
 
-  class AssertionViolationException extends RuntimeException {    
+  static class AssertionViolationException extends RuntimeException {    
     final int assertionNumber;
     final String message;
+    final String detail;      // null if there is no detail
+    final String source;
+    final int lineNumber;     // -1 if not location specific
 
-    AssertionViolationException(int assertionNumber, String message) {
+    AssertionViolationException(int assertionNumber, String message, String detail,
+                                String source, int lineNumber) {
       super("assertion #" + assertionNumber + " failed - " + message);
       this.assertionNumber = assertionNumber;
       this.message = message;
+      this.detail = detail;
+      this.source = source;
+      this.lineNumber = lineNumber;
+    }
+
+    void report(PrintStream err) {
+      String where = source + (lineNumber == -1? "" : ":" + lineNumber);
+      if (detail != null) {
+        err.println("Assertion #" + assertionNumber + " failed - " + message);
+        err.println(where + ": " + detail);
+      } else {
+        err.println(where + ": Assertion #" + assertionNumber + " failed - " + message);
+      }
     }
   }
-        
-  private FileTableRecord[] fileTable = null;
-  private LineTableRecord[] lineTable = null;
-  private StratumTableRecord[] stratumTable = null;
-  
-  private int fileIndex = 0;
-  private int lineIndex = 0;
-  private int stratumIndex = 0;
-  private int currentFileId = 0;
 
-  private int defaultStratumIndex = -1;
-  private String jplsFilename = null; 
-  private String defaultStratumId = null;
-  private boolean parseComplete = false;
-  
-  private static int sdePos = 0;
-  private static int lineNumber = 1;
+  /**
+   * The state of one verification: the SMAP being parsed and the
+   * current position in it.  The parsers of embedded SMAPs share the
+   * context of the enclosing SMAP, so they continue where it is.
+   */
+  static class Context {
+    final String source;
+    final SMAPText smap;
+    final int length;              // Integer.MAX_VALUE if not known
+    final boolean resolved;
+    final StreamText stream;       // null unless the SMAP is streamed
+    int sdePos = 0;
+    int lineNumber = 1;
 
-  private static String smap;
-  private static String source;
-  private static boolean resolved;
-  
-  VerifySMAP(String smap0, boolean resolved0) {
-    smap = smap0;
-    resolved = resolved0;
-  }
+    // bounds of the line last scanned, trimmed
+    int tokenStart = 0;
+    int tokenEnd = 0;
 
-  // For embedded SMAPs
-  VerifySMAP() {
-  }
+    // null unless all violations are collected
+    final List<AssertionViolationException> violations;
 
-  char sdePeek() {
-    if (sdePos >= smap.length()) {
-      syntax("unexpected end of SMAP");
+    // set to compose embedded SMAPs into their enclosing SMAP, see resolve
+    boolean resolve = false;
+
+    Context(String source, SMAPText smap, boolean resolved) {
+      this(source, smap, resolved, false);
     }
-    return smap.charAt(sdePos);
-  }
 
-  char sdeRead() {
-    if (sdePos >= smap.length()) {
-      syntax("unexpected end of SMAP");
+    Context(String source, SMAPText smap, boolean resolved, boolean collectAll) {
+      this.source = source;
+      this.smap = smap;
+      this.stream = smap instanceof StreamText? (StreamText)smap : null;
+      this.length = smap.length();
+      this.resolved = resolved;
+      this.violations = collectAll? new ArrayList<AssertionViolationException>() : null;
     }
-    return smap.charAt(sdePos++);
-  }
 
-  void sdeAdvance() {
-    sdePos++;
-  }
+    // a part of the SMAP of another context, from start up to the '*'
+    // at end, which the parts' parsers may peek at; see decodeParallel
+    Context(Context whole, int start, int end, int lineNumber) {
+      this.source = whole.source;
+      this.smap = whole.smap;
+      this.stream = null;
+      this.length = end + 1;
+      this.resolved = whole.resolved;
+      this.violations = whole.violations == null? null : new ArrayList<AssertionViolationException>();
+      this.sdePos = start;
+      this.lineNumber = lineNumber;
+    }
 
-  void error(int assertionNumber, String msg, String detail) {
-    System.err.println("Assertion #" + assertionNumber + " failed - " + msg);
-    System.err.println(source + (parseComplete? "" : ":" + lineNumber) + ": " + detail);
-    throw new AssertionViolationException(assertionNumber, msg);
-  }
+    // is there more of the SMAP at the position
+    boolean available(int pos) {
+      return pos < length && (stream == null || stream.available(pos));
+    }
 
-  void error(int assertionNumber, String msg) {
-    System.err.println(source + (parseComplete? "" : ":" + lineNumber) + ": Assertion #" + assertionNumber + " failed - " + msg);
-    throw new AssertionViolationException(assertionNumber, msg);
+    // the text of a range of the SMAP, decoded if the SMAP is bytes
+    String text(int start, int end) {
+      return smap.text(start, end);
+    }
   }
 
-  void syntax(String msg) {
-    error(1, "SMAP syntax error", msg);
+  /**
+   * What verifying one file took, for VerificationEvent and -stats.
+   * Times are in nanoseconds; a phase that was not run took zero.
+   */
+  static class Metrics {
+    long bytes;          // of the file read
+    long smapBytes;
+    int strata;
+    int files;
+    int lines;
+    long readNanos;
+    long extractNanos;   // scanning the class file for the SDE
+    long decodeNanos;
+    long verifyNanos;
+    boolean cached;
   }
 
-  void assureLineTableSize() {
-    int len = lineTable == null? 0 : lineTable.length;
-    if (lineIndex >= len) {
-      int i;
-      int newLen = len == 0? INIT_SIZE_LINE : len * 2;
-      LineTableRecord[] newTable = new LineTableRecord[newLen];
-      for (i = 0; i < len; ++i) {
-        newTable[i] = lineTable[i];
-      }
-      for (; i < newLen; ++i) {
-        newTable[i] = new LineTableRecord();
-      }
-      lineTable = newTable;
+  /**
+   * The outcome of verifying an SMAP.
+   */
+  public static class Result {
+    private final String source;
+    private final List<AssertionViolationException> violations;
+    private final String configurationError;
+    private final boolean configurationFailed;
+    private List<String> warnings = Collections.emptyList();
+    private VerifySMAP decoded = null;
+    final Metrics metrics = new Metrics();
+
+    Result(String source, List<AssertionViolationException> violations) {
+      this(source, violations, null, false);
     }
-  }
 
-  void assureFileTableSize() {
-    int len = fileTable == null? 0 : fileTable.length;
-    if (fileIndex >= len) {
-      int i;
-      int newLen = len == 0? INIT_SIZE_FILE : len * 2;
-      FileTableRecord[] newTable = new FileTableRecord[newLen];
-      for (i = 0; i < len; ++i) {
-        newTable[i] = fileTable[i];
-      }
-      for (; i < newLen; ++i) {
-        newTable[i] = new FileTableRecord();
-      }
-      fileTable = newTable;
+    private Result(String source, List<AssertionViolationException> violations,
+                   String configurationError, boolean configurationFailed) {
+      this.source = source;
+      this.violations = violations;
+      this.configurationError = configurationError;
+      this.configurationFailed = configurationFailed;
     }
-  }
 
-  void assureStratumTableSize() {
-    int len = stratumTable == null? 0 : stratumTable.length;
-    if (stratumIndex >= len) {
-      int i;
-      int newLen = len == 0? INIT_SIZE_STRATUM : len * 2;
-      StratumTableRecord[] newTable = new StratumTableRecord[newLen];
-      for (i = 0; i < len; ++i) {
-        newTable[i] = stratumTable[i];
-      }
-      for (; i < newLen; ++i) {
-        newTable[i] = new StratumTableRecord();
-      }
-      stratumTable = newTable;
+    // the file could not be read or has no SMAP, so was not verified
+    static Result configurationError(String source, String message) {
+      return new Result(source, Collections.<AssertionViolationException>emptyList(),
+                        message == null? "Configuration error" : message, true);
     }
-  }
 
-  String readLine() {
-    StringBuffer sb = new StringBuffer();
-    char ch;
+    public String getSource() {
+      return source;
+    }
 
-    ignoreWhite();
-    while (((ch = sdeRead()) != '\n') && (ch != '\r')) {
-      sb.append((char)ch);
+    public boolean isValid() {
+      return violations.isEmpty() && !configurationFailed;
     }
-    // check for CR LF
-    if ((ch == '\r') && (sdePeek() == '\n')) {
-      sdeRead();
+
+    // the SMAP could not be verified at all
+    public boolean hasConfigurationError() {
+      return configurationFailed;
     }
-    ignoreWhite(); // leading white
 
-    ++lineNumber;
-    return sb.toString().trim();
-  }
+    // null unless hasConfigurationError
+    public String getConfigurationError() {
+      return configurationError;
+    }
 
-  private int defaultStratumTableIndex() {
-    if ((defaultStratumIndex == -1) && (defaultStratumId != null)) {
-      defaultStratumIndex = 
-        stratumTableIndex(defaultStratumId);
+    // the number of the (first) failed assertion, or 0 if there is none
+    public int getAssertionNumber() {
+      return violations.isEmpty()? 0 : violations.get(0).assertionNumber;
     }
-    return defaultStratumIndex;
-  }   
 
-  int stratumTableIndex(String stratumId) {
-    int i;
+    public String getMessage() {
+      return violations.isEmpty()? configurationError : violations.get(0).message;
+    }
+
+    public String getDetail() {
+      return violations.isEmpty()? null : violations.get(0).detail;
+    }
+
+    // the SMAP line of the (first) violation, or -1 if not location specific
+    public int getLineNumber() {
+      return violations.isEmpty()? -1 : violations.get(0).lineNumber;
+    }
+
+    // all violations found; only the first unless all were collected
+    public List<AssertionViolationException> getViolations() {
+      return Collections.unmodifiableList(violations);
+    }
+
+    // the findings of the line range analysis, if it was run
+    public List<String> getWarnings() {
+      return Collections.unmodifiableList(warnings);
+    }
+
+    AssertionViolationException getViolation() {
+      return violations.isEmpty()? null : violations.get(0);
+    }
+
+    // the decoded SMAP, if it was kept, see verifyDecoded
+    VerifySMAP getDecoded() {
+      return decoded;
+    }
+  }
+        
+  // the file table, one column per field
+  private int[] fileFileId = null;
+  private String[] fileSourceName = null;
+  private String[] fileSourcePath = null; 
+
+  // the line table, one column per field
+  private int[] lineJplsStart = null;
+  private int[] lineJplsEnd = null;
+  private int[] lineJplsLineInc = null;
+  private int[] lineNjplsStart = null;
+  private int[] lineNjplsEnd = null;
+  private int[] lineFileId = null;
+
+  private StratumTableRecord[] stratumTable = null;
+  
+  private int fileIndex = 0;
+  private int lineIndex = 0;
+  private int stratumIndex = 0;
+  private int currentFileId = 0;
+
+  private int defaultStratumIndex = -1;
+  private String jplsFilename = null; 
+  private String defaultStratumId = null;
+  private boolean parseComplete = false;
+
+  // the OutputStratumId of the OpenEmbeddedSection being parsed, and,
+  // if this SMAP is embedded, of the section it is embedded in
+  private String openStratumId = null;
+  private String outputStratumId = null;
+
+  // when resolving, the embedded SMAPs to compose at the '*E'
+  private List<VerifySMAP> embedded = null;
+
+  // per stratum: the JPLS lines at which the mapping changes, and the
+  // line table index in effect from each of them on (-1 if unmapped);
+  // built on the first query, and published by the write of jplsBreaks
+  private volatile int[][] jplsBreaks = null;
+  private int[][] jplsBreakLines = null;
+
+  // per file: the input lines at which the covering line entries
+  // change, and the line table indexes of the entries covering each
+  // segment, njplsEntries[fi][njplsSegments[fi][b]] up to the next
+  // segment's first; built on the first reverse query, and published
+  // by the write of njplsBreaks
+  private volatile int[][] njplsBreaks = null;
+  private int[][] njplsSegments = null;
+  private int[][] njplsEntries = null;
+
+  private static final int[] NO_LINES = new int[0];
+  
+  private final Context ctx;
+  
+  VerifySMAP(String source, CharSequence smap, boolean resolved) {
+    ctx = new Context(source, text(smap), resolved);
+  }
+
+  // For embedded SMAPs - parse with the context of the enclosing SMAP
+  VerifySMAP(Context ctx0) {
+    ctx = ctx0;
+  }
+
+  /**
+   * Decode and verify an SMAP.  This may be called concurrently from
+   * any number of threads; violations are returned, not reported.
+   * Unless collectAll is set, verification stops at the first violation.
+   * Otherwise it goes on as far as the syntax allows.
+   */
+  public static Result verify(String source, CharSequence smap, boolean resolved,
+                              boolean collectAll) {
+    return verify(source, smap, resolved, collectAll, false);
+  }
+
+  /**
+   * As above; if analyze is set, the line tables of an SMAP that could
+   * be parsed are also analyzed, see analyzeLineRanges.
+   */
+  public static Result verify(String source, CharSequence smap, boolean resolved,
+                              boolean collectAll, boolean analyze) {
+    return verify(source, smap, resolved, collectAll, analyze, null);
+  }
+
+  /**
+   * As above; the SMAP of a class file is also checked against the
+   * lines of its LineNumberTables, if given, see crossCheckLines.
+   */
+  static Result verify(String source, CharSequence smap, boolean resolved,
+                       boolean collectAll, boolean analyze, BitSet javaLines) {
+    return verify(source, text(smap), resolved, collectAll, analyze, javaLines, false);
+  }
+
+  /**
+   * As above; if parallel is set, an SMAP of several strata and at
+   * least PARALLEL_SIZE chars is decoded on the common fork-join pool,
+   * see decodeParallel.
+   */
+  static Result verify(String source, SMAPText smap, boolean resolved,
+                       boolean collectAll, boolean analyze, BitSet javaLines, boolean parallel) {
+    return verify(new Context(source, smap, resolved, collectAll), analyze, javaLines, parallel, false);
+  }
+
+  /**
+   * Verify an SMAP, keeping it in the result if it was decoded whole,
+   * so that it can be queried without being parsed again.
+   */
+  static Result verifyDecoded(String source, CharSequence smap, boolean resolved) {
+    return verify(new Context(source, text(smap), resolved), false, null, false, true);
+  }
+
+  private static Result verify(Context ctx, boolean analyze, BitSet javaLines, boolean parallel,
+                               boolean keep) {
+    String source = ctx.source;
+    List<String> warnings = null;
+    Result result;
+    long start = System.nanoTime();
+    long decoded = 0;
+    VerifySMAP vsmap = parallel && ctx.length >= PARALLEL_SIZE? decodeParallel(ctx) : null;
+    if (vsmap == null) {
+      vsmap = new VerifySMAP(ctx);
+    }
+    try {
+      if (vsmap.parseComplete || vsmap.decode()) {
+        decoded = System.nanoTime();
+        vsmap.verify();
+        if (analyze) {
+          warnings = vsmap.analyzeLineRanges();
+          if (javaLines != null) {
+            warnings.addAll(vsmap.crossCheckLines(javaLines));
+          }
+        }
+      }
+      result = new Result(source, ctx.violations == null? 
+                          Collections.<AssertionViolationException>emptyList() : ctx.violations);
+    } catch (AssertionViolationException ex) {
+      if (ctx.violations == null) {
+        result = new Result(source, Collections.singletonList(ex));
+      } else {
+        ctx.violations.add(ex);
+        result = new Result(source, ctx.violations);
+      }
+    }
+    long end = System.nanoTime();
+    if (warnings != null) {
+      result.warnings = warnings;
+    }
+    if (keep && vsmap.parseComplete) {
+      result.decoded = vsmap;
+    }
+    Metrics metrics = result.metrics;
+    metrics.decodeNanos = (decoded == 0? end : decoded) - start;
+    metrics.verifyNanos = decoded == 0? 0 : end - decoded;
+    metrics.smapBytes = ctx.stream == null? ctx.length : ctx.sdePos;
+    metrics.strata = vsmap.parseComplete? vsmap.stratumIndex - 1 : vsmap.stratumIndex;
+    metrics.files = vsmap.fileIndex;
+    metrics.lines = vsmap.lineIndex;
+    return result;
+  }
+
+  /**
+   * Verify an SMAP read from a channel.  It is read in chunks and never
+   * held whole, so memory stays bounded however big the SMAP is.
+   */
+  public static Result verify(String source, ReadableByteChannel smap, boolean resolved,
+                              boolean collectAll) {
+    return verify(source, new StreamText(smap), resolved, collectAll, false, null, false);
+  }
+
+  public static Result verify(String source, CharSequence smap, boolean resolved) {
+    return verify(source, smap, resolved, false);
+  }
+
+  public static Result verify(CharSequence smap, boolean resolved) {
+    return verify("SMAP", smap, resolved);
+  }
+
+  char sdePeek() {
+    if (!ctx.available(ctx.sdePos)) {
+      syntax("unexpected end of SMAP");
+    }
+    return ctx.smap.charAt(ctx.sdePos);
+  }
+
+  char sdeRead() {
+    if (!ctx.available(ctx.sdePos)) {
+      syntax("unexpected end of SMAP");
+    }
+    return ctx.smap.charAt(ctx.sdePos++);
+  }
+
+  void sdeAdvance() {
+    ctx.sdePos++;
+  }
 
+  /**
+   * Report a failed assertion.  When all violations are collected this
+   * returns, except for syntax errors, after which parsing cannot go on.
+   */
+  void error(int assertionNumber, String msg, String detail) {
+    AssertionViolationException violation =
+      new AssertionViolationException(assertionNumber, msg, detail, ctx.source,
+                                      parseComplete? -1 : ctx.lineNumber);
+    if (ctx.violations == null || assertionNumber == 1) {
+      throw violation;
+    }
+    ctx.violations.add(violation);
+  }
+
+  void error(int assertionNumber, String msg) {
+    error(assertionNumber, msg, null);
+  }
+
+  void syntax(String msg) {
+    error(1, "SMAP syntax error", msg);
+  }
+
+  void assureLineTableSize() {
+    assureLineTableSize(lineIndex + 1);
+  }
+
+  void assureLineTableSize(int size) {
+    int len = lineJplsStart == null? 0 : lineJplsStart.length;
+    if (size > len) {
+      int newLen = Math.max(size, len == 0? INIT_SIZE_LINE : len * 2);
+      lineJplsStart = grow(lineJplsStart, newLen);
+      lineJplsEnd = grow(lineJplsEnd, newLen);
+      lineJplsLineInc = grow(lineJplsLineInc, newLen);
+      lineNjplsStart = grow(lineNjplsStart, newLen);
+      lineNjplsEnd = grow(lineNjplsEnd, newLen);
+      lineFileId = grow(lineFileId, newLen);
+    }
+  }
+
+  void assureFileTableSize() {
+    assureFileTableSize(fileIndex + 1);
+  }
+
+  void assureFileTableSize(int size) {
+    int len = fileFileId == null? 0 : fileFileId.length;
+    if (size > len) {
+      int newLen = Math.max(size, len == 0? INIT_SIZE_FILE : len * 2);
+      fileFileId = grow(fileFileId, newLen);
+      fileSourceName = grow(fileSourceName, newLen);
+      fileSourcePath = grow(fileSourcePath, newLen);
+    }
+  }
+
+  void assureStratumTableSize() {
+    int len = stratumTable == null? 0 : stratumTable.length;
+    if (stratumIndex >= len) {
+      int newLen = len == 0? INIT_SIZE_STRATUM : len * 2;
+      stratumTable = stratumTable == null? 
+        new StratumTableRecord[newLen] : Arrays.copyOf(stratumTable, newLen);
+    }
+  }
+
+  private static int[] grow(int[] column, int newLen) {
+    return column == null? new int[newLen] : Arrays.copyOf(column, newLen);
+  }
+
+  private static String[] grow(String[] column, int newLen) {
+    return column == null? new String[newLen] : Arrays.copyOf(column, newLen);
+  }
+
+  /**
+   * Advance past the next line, leaving its bounds, trimmed as by
+   * String.trim(), in ctx.tokenStart and ctx.tokenEnd.  Nothing is
+   * allocated; only lines whose value is kept are made into Strings.
+   */
+  void scanLine() {
+    char ch;
+
+    ignoreWhite();
+    int start = ctx.sdePos;
+    while (((ch = sdeRead()) != '\n') && (ch != '\r')) {
+    }
+    int end = ctx.sdePos - 1;
+    // check for CR LF
+    if ((ch == '\r') && (sdePeek() == '\n')) {
+      sdeAdvance();
+    }
+    ignoreWhite(); // leading white
+
+    ++ctx.lineNumber;
+    while ((start < end) && (ctx.smap.charAt(start) <= ' ')) {
+      ++start;
+    }
+    while ((end > start) && (ctx.smap.charAt(end - 1) <= ' ')) {
+      --end;
+    }
+    ctx.tokenStart = start;
+    ctx.tokenEnd = end;
+  }
+
+  String readLine() {
+    scanLine();
+    // decode the line as a whole - it need not be ASCII
+    return ctx.text(ctx.tokenStart, ctx.tokenEnd);
+  }
+
+  private int defaultStratumTableIndex() {
+    if ((defaultStratumIndex == -1) && (defaultStratumId != null)) {
+      defaultStratumIndex = 
+        findStratum(defaultStratumId);
+    }
+    return defaultStratumIndex;
+  }   
+
+  int stratumTableIndex(String stratumId) {
     if (stratumId == null) {
       return defaultStratumTableIndex();
     }
+    int i = findStratum(stratumId);
+    return i != -1? i : defaultStratumTableIndex();
+  }   
+
+  private int findStratum(String stratumId) {
+    int i;
+
     for (i = 0; i < (stratumIndex-1); ++i) {
       if (stratumTable[i].id.equals(stratumId)) {
         return i;
       }
     }
-    return defaultStratumTableIndex();
-  }   
+    return -1;
+  }
 
   void ignoreWhite() {
     char ch;
@@ -392,7 +1220,7 @@ class VerifySMAP {
       sdeAdvance();
     }
     ignoreWhite(); /* leading white */
-    ++lineNumber;
+    ++ctx.lineNumber;
   }
 
   int readNumber() {
@@ -412,10 +1240,11 @@ class VerifySMAP {
   }
 
   void storeFile(int fileId, String sourceName, String sourcePath) {
+    stratumTable[stratumIndex-1].fileIds.putIfAbsent(fileId, fileIndex);
     assureFileTableSize();
-    fileTable[fileIndex].fileId = fileId;
-    fileTable[fileIndex].sourceName = sourceName;
-    fileTable[fileIndex].sourcePath = sourcePath;
+    fileFileId[fileIndex] = fileId;
+    fileSourceName[fileIndex] = sourceName;
+    fileSourcePath[fileIndex] = sourcePath;
     ++fileIndex;
   }
 
@@ -451,12 +1280,12 @@ class VerifySMAP {
   void storeLine(int jplsStart, int jplsEnd, int jplsLineInc, 
                  int njplsStart, int njplsEnd, int fileId) {
     assureLineTableSize();
-    lineTable[lineIndex].jplsStart = jplsStart;
-    lineTable[lineIndex].jplsEnd = jplsEnd;
-    lineTable[lineIndex].jplsLineInc = jplsLineInc;
-    lineTable[lineIndex].njplsStart = njplsStart;
-    lineTable[lineIndex].njplsEnd = njplsEnd;
-    lineTable[lineIndex].fileId = fileId;
+    lineJplsStart[lineIndex] = jplsStart;
+    lineJplsEnd[lineIndex] = jplsEnd;
+    lineJplsLineInc[lineIndex] = jplsLineInc;
+    lineNjplsStart[lineIndex] = njplsStart;
+    lineNjplsEnd[lineIndex] = njplsEnd;
+    lineFileId[lineIndex] = fileId;
     ++lineIndex;
   }
 
@@ -519,11 +1348,13 @@ class VerifySMAP {
   void storeStratum(String stratumId) {
     /* store the results */
     assureStratumTableSize();
+    stratumTable[stratumIndex] = new StratumTableRecord();
     stratumTable[stratumIndex].id = stratumId;
     stratumTable[stratumIndex].fileIndex = fileIndex;
     stratumTable[stratumIndex].lineIndex = lineIndex;
     stratumTable[stratumIndex].fileSectionCount = 0;
     stratumTable[stratumIndex].lineSectionCount = 0;
+    stratumTable[stratumIndex].fileIds = new FileIdMap();
     ++stratumIndex;
     currentFileId = 0;
   }
@@ -543,6 +1374,8 @@ class VerifySMAP {
     skipRemainingWhite();
     if (stratumIndex == 0) {
       error(5, "FileSection must only occur after StratumSection");
+      ignoreSection();
+      return;
     } else {
       stratumTable[stratumIndex-1].fileSectionCount++;
     }
@@ -555,6 +1388,8 @@ class VerifySMAP {
     skipRemainingWhite();
     if (stratumIndex == 0) {
       error(10, "LineSection must only occur after StratumSection");
+      ignoreSection();
+      return;
     } else {
       stratumTable[stratumIndex-1].lineSectionCount++;
     }
@@ -565,35 +1400,46 @@ class VerifySMAP {
 
   void vendorSection() {
     skipRemainingWhite();
-    String vendorId = readLine();
-    if (vendorId.length() == 0) {
+    scanLine();
+    if (ctx.tokenStart == ctx.tokenEnd) {
       error(17, "VENDORID missing");
     }
+    // check the VENDORID in place, unless it is not ASCII
+    for (int i = ctx.tokenStart; i < ctx.tokenEnd; ++i) {
+      char ch = ctx.smap.charAt(i);
+      if (ch >= 0x80) {
+        checkVendorId(ctx.text(ctx.tokenStart, ctx.tokenEnd));
+        break;
+      }
+      if (ch != '.' && !Character.isJavaIdentifierPart(ch)) {
+        error(17, "VENDORID contains invalid character", "Bad character: '" + ch + "' at position " + (i - ctx.tokenStart));
+        break;
+      }
+    }
+    ignoreSection();
+  }
+
+  void checkVendorId(String vendorId) {
     for (int i = 0; i < vendorId.length(); ++i) {
       char ch = vendorId.charAt(i);
       if (ch != '.' && !Character.isJavaIdentifierPart(ch)) {
         error(17, "VENDORID contains invalid character", "Bad character: '" + ch + "' at position " + i);
+        break;
       }
     }
-    ignoreSection();
   }
 
   void openEmbeddedSection() {
-    if (resolved) {
+    if (ctx.resolved) {
       error(20, "An embedded SMAP must not occur in a resolved SMAP");
     }
-    String outputStratumId = readLine();
-    if (outputStratumId.length() == 0) {
+    openStratumId = readLine();
+    if (openStratumId.length() == 0) {
       syntax("Output StratumID missing");
     }
-    do {
-      // recurse
-      VerifySMAP vsmap = new VerifySMAP();
-      if (vsmap.decode()) {
-        vsmap.verify();
-      }
-      skipRemainingWhite();  // Get past the '*E'
-    } while (sdePeek() != '*');
+  }
+
+  void closeEmbeddedSection() {
     if (sdeRead() != '*') {
       syntax("expected a '*'");
     }
@@ -602,10 +1448,21 @@ class VerifySMAP {
       error(21, "CloseEmbeddedSection must terminate an OpenEmbeddedSection", "expected a CloseEmbeddedSection - '*C'");
     }
     String closeStratumId = readLine();
-    if (!closeStratumId.equals(outputStratumId)) {
+    if (!closeStratumId.equals(openStratumId)) {
       error(22, "StratumId of CloseEmbeddedSection does not match StratumId of OpenEmbeddedSection",
-            "'" + closeStratumId + "' vs. '" + outputStratumId + "'");
+            "'" + closeStratumId + "' vs. '" + openStratumId + "'");
     }
+    openStratumId = null;
+  }
+
+  /**
+   * A parser for the next SMAP embedded in the open section.
+   */
+  VerifySMAP embeddedParser() {
+    VerifySMAP vsmap = new VerifySMAP(ctx);
+    vsmap.outputStratumId = openStratumId;
+    vsmap.header();
+    return vsmap;
   }
 
   /**
@@ -613,17 +1470,234 @@ class VerifySMAP {
    */
   void ignoreSection() {
     while (sdePeek() != '*') {
-      readLine();
+      scanLine();
     }
   }
 
   /**
    * Decode an SMAP.
    * This is the entry point into the recursive descent parser.
+   * Embedded SMAPs are not parsed recursively: each is decoded by its
+   * own parser, and the parsers of the enclosing SMAPs wait on a stack,
+   * so SMAPs may be nested to any depth.
    */
   boolean decode() {
+    ArrayDeque<VerifySMAP> enclosing = new ArrayDeque<VerifySMAP>();
+    VerifySMAP vsmap = this;
+    header();
+    while (true) {
+      if (sdeRead() != '*') {
+        syntax("expected a '*'");
+      }
+      char sectionType = sdeRead();
+      if (sectionType == 'O') {
+        vsmap.openEmbeddedSection();
+        enclosing.push(vsmap);
+        vsmap = vsmap.embeddedParser();
+      } else if (sectionType != 'E') {
+        vsmap.section(sectionType);
+      } else {
+        vsmap.endSMAP();
+        if (enclosing.isEmpty()) {
+          return true;
+        }
+        // an embedded SMAP is complete
+        vsmap.verify();
+        VerifySMAP outer = enclosing.peek();
+        if (ctx.resolve) {
+          outer.embedded.add(vsmap);
+        }
+        skipRemainingWhite();  // Get past the '*E'
+        if (sdePeek() != '*') {
+          vsmap = outer.embeddedParser();
+        } else {
+          vsmap = enclosing.pop();
+          vsmap.closeEmbeddedSection();
+        }
+      }
+    }
+  }
+
+  /**
+   * Decode an SMAP of several strata on the common fork-join pool.
+   * The section boundaries are found first, by scanStrata, then each
+   * stratum is decoded by its own parser, and their tables are appended
+   * in order, as the sequential parser would have stored them.
+   * Null is returned, with the context as it was, if the SMAP must be
+   * decoded sequentially: it has embedded SMAPs or fewer than two
+   * strata, or a part has a violation, which the sequential parser
+   * then reports, at the same position.  With one processor, there is
+   * nothing to gain.
+   */
+  static VerifySMAP decodeParallel(Context ctx) {
+    if (ctx.stream != null || Runtime.getRuntime().availableProcessors() < 2) {
+      return null;
+    }
+    final VerifySMAP vsmap = new VerifySMAP(ctx);
+    try {
+      vsmap.header();
+      int[] strata = scanStrata(ctx.smap, ctx.sdePos, ctx.lineNumber, ctx.length);
+      if (strata != null) {
+        // the sections before the first stratum
+        vsmap.decodeSections(strata[0]);
+        if (ctx.violations == null || ctx.violations.isEmpty()) {
+          List<Callable<VerifySMAP>> parts = new ArrayList<Callable<VerifySMAP>>();
+          for (int i = 0; i + 2 < strata.length; i += 2) {
+            final Context part = new Context(ctx, strata[i], strata[i + 2], strata[i + 1]);
+            parts.add(new Callable<VerifySMAP>() {
+              public VerifySMAP call() {
+                VerifySMAP parser = new VerifySMAP(part);
+                parser.decodeSections(part.length - 1);
+                return parser;
+              }
+            });
+          }
+          List<VerifySMAP> parsers = new ArrayList<VerifySMAP>(parts.size());
+          for (Future<VerifySMAP> parser : ForkJoinPool.commonPool().invokeAll(parts)) {
+            parsers.add(parser.get());
+          }
+          if (vsmap.merge(parsers)) {
+            ctx.sdePos = strata[strata.length - 2] + 2;   // past the "*E"
+            vsmap.endSMAP();
+            return vsmap;
+          }
+        }
+      }
+    } catch (AssertionViolationException ex) {
+      // reported by the sequential parser
+    } catch (ExecutionException ex) {
+      // likewise
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    ctx.sdePos = 0;
+    ctx.lineNumber = 1;
+    if (ctx.violations != null) {
+      ctx.violations.clear();
+    }
+    return null;
+  }
+
+  /**
+   * Find the "*S" and "*E" sections of an SMAP, as its parser would:
+   * a '*' after the leading white space of a line starts a section,
+   * except on the line after a VendorSection header, which is the
+   * VENDORID, or after a FileSection line with a '+', which is the
+   * AbsoluteFileName.  Returned are the positions of their '*' and
+   * their line numbers, in pairs, up to the "*E"; null if the SMAP has
+   * fewer than two strata, embedded SMAPs or no end.
+   */
+  static int[] scanStrata(SMAPText smap, int pos, int lineNumber, int length) {
+    int[] strata = new int[16];
+    int count = 0;
+    char sectionType = 0;
+    while (pos < length) {
+      char ch = smap.charAt(pos);
+      boolean skipNext = false;
+      if (ch == '*') {
+        if (pos + 1 >= length) {
+          return null;
+        }
+        sectionType = smap.charAt(pos + 1);
+        if (sectionType == 'O' || sectionType == 'C') {
+          return null;
+        }
+        if (sectionType == 'S' || sectionType == 'E') {
+          if (count + 2 > strata.length) {
+            strata = Arrays.copyOf(strata, 2 * strata.length);
+          }
+          strata[count++] = pos;
+          strata[count++] = lineNumber;
+          if (sectionType == 'E') {
+            return count >= 6? Arrays.copyOf(strata, count) : null;
+          }
+        }
+        skipNext = sectionType == 'V';
+      } else if (ch == '+' && sectionType == 'F') {
+        skipNext = true;
+      }
+      for (int lines = skipNext? 2 : 1; lines > 0 && pos < length; --lines) {
+        // past the line end, then the leading white space of the next line
+        while (pos < length && (ch = smap.charAt(pos)) != '\n' && ch != '\r') {
+          ++pos;
+        }
+        if (pos < length) {
+          ++pos;
+          if (ch == '\r' && pos < length && smap.charAt(pos) == '\n') {
+            ++pos;
+          }
+          ++lineNumber;
+        }
+        while (pos < length && ((ch = smap.charAt(pos)) == ' ' || ch == '\t')) {
+          ++pos;
+        }
+      }
+    }
+    return null;
+  }
+
+  // decode the sections up to the '*' at end, see decodeParallel
+  void decodeSections(int end) {
+    while (ctx.sdePos < end) {
+      if (sdeRead() != '*') {
+        syntax("expected a '*'");
+      }
+      char sectionType = sdeRead();
+      if (sectionType == 'O' || sectionType == 'E') {
+        syntax("unexpected section *" + sectionType);
+      }
+      section(sectionType);
+    }
+  }
+
+  /**
+   * Append the strata decoded by the parsers of the parts of this SMAP;
+   * false if a part did not decode exactly one stratum, up to its end.
+   */
+  boolean merge(List<VerifySMAP> parsers) {
+    for (VerifySMAP parser : parsers) {
+      if (parser.stratumIndex != 1 || parser.ctx.sdePos != parser.ctx.length - 1 ||
+          (parser.ctx.violations != null && !parser.ctx.violations.isEmpty())) {
+        return false;
+      }
+    }
+    for (VerifySMAP parser : parsers) {
+      StratumTableRecord part = parser.stratumTable[0];
+      storeStratum(part.id);
+      StratumTableRecord record = stratumTable[stratumIndex-1];
+      record.fileSectionCount = part.fileSectionCount;
+      record.lineSectionCount = part.lineSectionCount;
+
+      int files = parser.fileIndex;
+      if (files > 0) {
+        assureFileTableSize(fileIndex + files);
+        System.arraycopy(parser.fileFileId, 0, fileFileId, fileIndex, files);
+        System.arraycopy(parser.fileSourceName, 0, fileSourceName, fileIndex, files);
+        System.arraycopy(parser.fileSourcePath, 0, fileSourcePath, fileIndex, files);
+        for (int fi = 0; fi < files; ++fi) {
+          record.fileIds.putIfAbsent(fileFileId[fileIndex + fi], fileIndex + fi);
+        }
+        fileIndex += files;
+      }
+
+      int lines = parser.lineIndex;
+      if (lines > 0) {
+        assureLineTableSize(lineIndex + lines);
+        System.arraycopy(parser.lineJplsStart, 0, lineJplsStart, lineIndex, lines);
+        System.arraycopy(parser.lineJplsEnd, 0, lineJplsEnd, lineIndex, lines);
+        System.arraycopy(parser.lineJplsLineInc, 0, lineJplsLineInc, lineIndex, lines);
+        System.arraycopy(parser.lineNjplsStart, 0, lineNjplsStart, lineIndex, lines);
+        System.arraycopy(parser.lineNjplsEnd, 0, lineNjplsEnd, lineIndex, lines);
+        System.arraycopy(parser.lineFileId, 0, lineFileId, lineIndex, lines);
+        lineIndex += lines;
+      }
+    }
+    return true;
+  }
+
+  void header() {
     /* check for "SMAP" */
-    if ((smap.length() < 4) ||
+    if (!ctx.available(3) ||
         (sdeRead() != 'S') ||
         (sdeRead() != 'M') ||
         (sdeRead() != 'A') ||
@@ -633,45 +1707,50 @@ class VerifySMAP {
     skipRemainingWhite(); /* flush the rest */
     jplsFilename = readLine();
     defaultStratumId = readLine();
-    while (true) {
-      if (sdeRead() != '*') {
-        syntax("expected a '*'");
-      }
-      char sectionType = sdeRead();
-      switch (sectionType) {
-      case 'S': 
-        stratumSection();
-        break;
-      case 'F': 
-        fileSection();
-        break;
-      case 'L': 
-        lineSection();
-        break;
-      case 'V': 
-        vendorSection();
-        break;
-      case 'E': 
-        /* set end points */
-        storeStratum("*terminator*"); 
-        parseComplete = true;  // mark not location specific
-        return true;
-      case 'O':
-        openEmbeddedSection();
-        break;
-      default:
-        error(18, "Unknown section type", "Section type: *" + sectionType);
-        ignoreSection();
+    if (ctx.resolve) {
+      embedded = new ArrayList<VerifySMAP>();
+    }
+  }
+
+  void section(char sectionType) {
+    switch (sectionType) {
+    case 'S': 
+      stratumSection();
+      break;
+    case 'F': 
+      fileSection();
+      break;
+    case 'L': 
+      lineSection();
+      break;
+    case 'V': 
+      vendorSection();
+      break;
+    default:
+      error(18, "Unknown section type", "Section type: *" + sectionType);
+      ignoreSection();
+    }
+  }
+
+  void endSMAP() {
+    if (ctx.resolve) {
+      int ownStrata = stratumIndex;
+      for (VerifySMAP inner : embedded) {
+        compose(inner, ownStrata);
       }
+      embedded = null;
     }
+    /* set end points */
+    storeStratum("*terminator*"); 
+    parseComplete = true;  // mark not location specific
   }
 
   void verify() {
-    if (stratumIndex == 0) {
+    if (stratumIndex <= 1) {   // the terminator does not count
       error(19, "There must be at least one StratumSection");
     }
     if (defaultStratumId.length() == 0) {
-      if (resolved) {
+      if (ctx.resolved) {
         error(2, "resolved SMAP with unspecified DefaultStratumId");
       } else {
         // unresolved SMAPs need not specify the default stratum
@@ -704,75 +1783,758 @@ class VerifySMAP {
       int lineIndexStart = stratumTable[sti].lineIndex;
       int lineIndexEnd = stratumTable[sti+1].lineIndex;   /* one past end */
       for (int li = lineIndexStart; li < lineIndexEnd; ++li) {
-        if (fileTableIndex(sti, lineTable[li].fileId) == -1) {
+        if (fileTableIndex(sti, lineFileId[li]) == -1) {
           error(16, "In a LineSection, LineFileId must be a FileId in the FileSection after the same StratumSection",
-                "FileId " + lineTable[li].fileId + " not found");
+                "FileId " + lineFileId[li] + " not found");
+        }
+      }
+    }
+  }
+
+
+  /***************** line range analysis ***********************/
+
+  /**
+   * Look for line tables that are legal but suspect.  In each stratum:
+   * Java lines mapped by more than one line entry, unmapped Java lines
+   * between mapped ones, and input lines of a file mapped by more than
+   * one entry.  Each check is a sort and a sweep of the stratum's line
+   * entries, so this is O(n log n) in their number.
+   */
+  List<String> analyzeLineRanges() {
+    List<String> warnings = new ArrayList<String>();
+    for (int sti = 0; sti < stratumIndex - 1; ++sti) {
+      analyzeJplsRanges(sti, warnings);
+      analyzeNjplsRanges(sti, warnings);
+    }
+    return warnings;
+  }
+
+  // the non-empty line entries of a stratum, as (start << 32 | index), sorted
+  private long[] sortedLineEntries(int sti, int[] start) {
+    int lineIndexStart = stratumTable[sti].lineIndex;
+    int lineIndexEnd = stratumTable[sti+1].lineIndex;   /* one past end */
+    long[] entries = new long[lineIndexEnd - lineIndexStart];
+    int count = 0;
+    for (int li = lineIndexStart; li < lineIndexEnd; ++li) {
+      if (lineJplsEnd[li] >= lineJplsStart[li]) {
+        entries[count++] = ((long)start[li] << 32) | li;
+      }
+    }
+    entries = Arrays.copyOf(entries, count);
+    Arrays.sort(entries);
+    return entries;
+  }
+
+  private void analyzeJplsRanges(int sti, List<String> warnings) {
+    String stratumId = stratumTable[sti].id;
+    int reach = -1;   // of the entries so far, the one ending last
+    for (long entry : sortedLineEntries(sti, lineJplsStart)) {
+      int li = (int)entry;
+      if (reach != -1) {
+        if (lineJplsStart[li] <= lineJplsEnd[reach]) {
+          warnings.add("Stratum " + stratumId + ": Java " +
+                       lines(lineJplsStart[li], Math.min(lineJplsEnd[li], lineJplsEnd[reach])) +
+                       " mapped by both '" + lineInfo(reach) + "' and '" + lineInfo(li) + "'");
+        } else if (lineJplsStart[li] > lineJplsEnd[reach] + 1) {
+          warnings.add("Stratum " + stratumId + ": Java " +
+                       lines(lineJplsEnd[reach] + 1, lineJplsStart[li] - 1) + " not mapped");
         }
       }
+      if (reach == -1 || lineJplsEnd[li] > lineJplsEnd[reach]) {
+        reach = li;
+      }
     }
   }
 
+  private void analyzeNjplsRanges(int sti, List<String> warnings) {
+    String stratumId = stratumTable[sti].id;
+    long[] entries = sortedLineEntries(sti, lineNjplsStart);
+    // per file: of the entries so far, the one ending last
+    FileIdMap fileSlots = new FileIdMap();
+    int[] reach = new int[entries.length];
+    int files = 0;
+    for (long entry : entries) {
+      int li = (int)entry;
+      int slot = fileSlots.get(lineFileId[li]);
+      if (slot == -1) {
+        fileSlots.putIfAbsent(lineFileId[li], files);
+        reach[files++] = li;
+        continue;
+      }
+      int r = reach[slot];
+      if (lineNjplsStart[li] <= lineNjplsEnd[r]) {
+        int fti = fileTableIndex(sti, lineFileId[li]);
+        warnings.add("Stratum " + stratumId + ": " +
+                     (fti == -1? "FileId " + lineFileId[li] : fileSourceName[fti]) + " " +
+                     lines(lineNjplsStart[li], Math.min(lineNjplsEnd[li], lineNjplsEnd[r])) +
+                     " mapped by both '" + lineInfo(r) + "' and '" + lineInfo(li) + "'");
+      }
+      if (lineNjplsEnd[li] > lineNjplsEnd[r]) {
+        reach[slot] = li;
+      }
+    }
+  }
+
+  /**
+   * Check the SMAP against the Java lines that have bytecode, as the
+   * LineNumberTables of its class give them.  In each stratum, report
+   * Java lines with bytecode that are not mapped, and mapped Java lines
+   * without bytecode, as a stale SMAP has.
+   */
+  List<String> crossCheckLines(BitSet javaLines) {
+    List<String> warnings = new ArrayList<String>();
+    if (javaLines.isEmpty()) {
+      warnings.add("The class has no LineNumberTable, so its lines were not checked against the SMAP");
+      return warnings;
+    }
+    for (int sti = 0; sti < stratumIndex - 1; ++sti) {
+      BitSet mapped = new BitSet();
+      for (int li = stratumTable[sti].lineIndex; li < stratumTable[sti+1].lineIndex; ++li) {
+        if (lineJplsStart[li] >= 0 && lineJplsEnd[li] >= lineJplsStart[li]) {
+          mapped.set(lineJplsStart[li], lineJplsEnd[li] + 1);
+        }
+      }
+      BitSet unmapped = (BitSet)javaLines.clone();
+      unmapped.andNot(mapped);
+      if (!unmapped.isEmpty()) {
+        warnings.add("Stratum " + stratumTable[sti].id + 
+                     ": Java lines with bytecode are not mapped: " + spans(unmapped));
+      }
+      mapped.andNot(javaLines);
+      if (!mapped.isEmpty()) {
+        warnings.add("Stratum " + stratumTable[sti].id + 
+                     ": mapped Java lines have no bytecode: " + spans(mapped));
+      }
+    }
+    return warnings;
+  }
+
+  // the line spans of a set of lines, like "1-4, 20, 33-35"; the first ten only
+  private static String spans(BitSet lines) {
+    StringBuilder sb = new StringBuilder();
+    int count = 0;
+    for (int first = lines.nextSetBit(0); first >= 0; first = lines.nextSetBit(first)) {
+      if (count++ == 10) {
+        sb.append(", ...");
+        break;
+      }
+      int end = lines.nextClearBit(first);
+      sb.append(count == 1? "" : ", ").append(first);
+      if (end - 1 > first) {
+        sb.append('-').append(end - 1);
+      }
+      first = end;
+    }
+    return sb.toString();
+  }
+
+  private static String lines(int first, int last) {
+    return first == last? "line " + first + " is" : "lines " + first + "-" + last + " are";
+  }
+
+  // a line entry as it is written in a LineSection
+  private String lineInfo(int li) {
+    int repeat = lineNjplsEnd[li] - lineNjplsStart[li] + 1;
+    return lineNjplsStart[li] + "#" + lineFileId[li] + (repeat == 1? "" : "," + repeat) +
+      ":" + lineJplsStart[li] + (lineJplsLineInc[li] == 1? "" : "," + lineJplsLineInc[li]);
+  }
+
+
+  /***************** resolution ***********************/
+
+  /**
+   * Resolve an unresolved SMAP: the strata of the embedded SMAPs are
+   * composed with the output strata they are embedded in, as JSR-45
+   * describes, while the SMAP is parsed.  The embedded SMAPs are
+   * verified as they are parsed; the resolved SMAP is returned.
+   */
+  public static String resolve(String source, CharSequence smap) {
+    Context ctx = new Context(source, text(smap), false);
+    ctx.resolve = true;
+    VerifySMAP vsmap = new VerifySMAP(ctx);
+    vsmap.decode();
+    vsmap.verify();
+    return vsmap.resolvedSMAP();
+  }
+
+  /**
+   * Add a stratum for each stratum of an embedded SMAP, mapping its
+   * input lines through the lines of the embedded SMAP's output file
+   * in the output stratum (among the first ownStrata strata) to Java
+   * lines.
+   */
+  private void compose(VerifySMAP inner, int ownStrata) {
+    // the output stratum's line entries for the output file
+    int count = 0;
+    long[] byStart = new long[lineIndex];
+    for (int sti = 0; sti < ownStrata; ++sti) {
+      if (!stratumTable[sti].id.equals(inner.outputStratumId)) {
+        continue;
+      }
+      int lineIndexEnd = sti + 1 < stratumIndex? stratumTable[sti+1].lineIndex : lineIndex;
+      for (int li = stratumTable[sti].lineIndex; li < lineIndexEnd; ++li) {
+        int fti = stiFileTableIndex(sti, li);
+        if (fti != -1 && fileSourceName[fti].equals(inner.jplsFilename) &&
+            lineJplsEnd[li] >= lineJplsStart[li]) {
+          byStart[count++] = ((long)lineNjplsStart[li] << 32) | li;
+        }
+      }
+    }
+    Arrays.sort(byStart, 0, count);
+    int[] entries = new int[count];
+    int[] maxEnds = new int[count];   // the last line any entry up to here covers
+    for (int i = 0; i < count; ++i) {
+      entries[i] = (int)byStart[i];
+      maxEnds[i] = Math.max(i == 0? 0 : maxEnds[i-1], lineNjplsEnd[entries[i]]);
+    }
+
+    for (int isti = 0; isti < inner.stratumIndex - 1; ++isti) {
+      storeStratum(inner.stratumTable[isti].id);
+      stratumTable[stratumIndex-1].fileSectionCount = 1;
+      stratumTable[stratumIndex-1].lineSectionCount = 1;
+      for (int fi = inner.stratumTable[isti].fileIndex; fi < inner.stratumTable[isti+1].fileIndex; ++fi) {
+        storeFile(inner.fileFileId[fi], inner.fileSourceName[fi], inner.fileSourcePath[fi]);
+      }
+      int firstLine = lineIndex;
+      for (int li = inner.stratumTable[isti].lineIndex; li < inner.stratumTable[isti+1].lineIndex; ++li) {
+        int inc = inner.lineJplsLineInc[li];
+        if (inner.lineJplsEnd[li] < inner.lineJplsStart[li]) {
+          continue;
+        }
+        for (int line = inner.lineNjplsStart[li]; line <= inner.lineNjplsEnd[li]; ++line) {
+          // the output file lines of this input line
+          int first = inner.lineJplsStart[li] + (line - inner.lineNjplsStart[li]) * inc;
+          int last = first + inc - 1;
+          int lo = 0;
+          int hi = count;
+          while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] < first) {
+              lo = mid + 1;
+            } else {
+              hi = mid;
+            }
+          }
+          for (int i = lo; i < count && lineNjplsStart[entries[i]] <= last; ++i) {
+            int e = entries[i];
+            if (lineNjplsEnd[e] < first) {
+              continue;
+            }
+            int from = Math.max(first, lineNjplsStart[e]);
+            int to = Math.min(last, lineNjplsEnd[e]);
+            storeComposedLine(firstLine, line, inner.lineFileId[li],
+                              lineJplsStart[e] + (from - lineNjplsStart[e]) * lineJplsLineInc[e],
+                              (to - from + 1) * lineJplsLineInc[e]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Store the mapping of an input line to Java lines, extending the
+   * previous entry of the stratum (from firstLine) if it continues it.
+   */
+  private void storeComposedLine(int firstLine, int njplsLine, int fileId,
+                                 int jplsStart, int jplsCount) {
+    int prev = lineIndex - 1;
+    if (prev >= firstLine && lineFileId[prev] == fileId &&
+        lineJplsLineInc[prev] == jplsCount &&
+        lineNjplsEnd[prev] + 1 == njplsLine &&
+        lineJplsEnd[prev] + 1 == jplsStart) {
+      lineNjplsEnd[prev] = njplsLine;
+      lineJplsEnd[prev] += jplsCount;
+    } else {
+      storeLine(jplsStart, jplsStart + jplsCount - 1, jplsCount,
+                njplsLine, njplsLine, fileId);
+    }
+  }
+
+  /**
+   * Write the decoded SMAP.  Strata with the same StratumId are merged,
+   * and the FileIds of each stratum are renumbered from one.
+   */
+  String resolvedSMAP() {
+    StringBuilder out = new StringBuilder();
+    out.append("SMAP\n").append(jplsFilename).append('\n');
+    out.append(defaultStratumId.length() == 0? BASE_STRATUM_NAME : defaultStratumId).append('\n');
+    int strata = stratumIndex - 1;
+    boolean[] written = new boolean[strata];
+    for (int sti = 0; sti < strata; ++sti) {
+      if (written[sti]) {
+        continue;
+      }
+      String id = stratumTable[sti].id;
+      StringBuilder lines = new StringBuilder();
+      int nextFileId = 1;
+      out.append("*S ").append(id).append("\n*F\n");
+      for (int s = sti; s < strata; ++s) {
+        if (!stratumTable[s].id.equals(id)) {
+          continue;
+        }
+        written[s] = true;
+        FileIdMap fileIds = new FileIdMap();
+        for (int fi = stratumTable[s].fileIndex; fi < stratumTable[s+1].fileIndex; ++fi) {
+          fileIds.putIfAbsent(fileFileId[fi], nextFileId);
+          if (fileSourcePath[fi] != null) {
+            out.append("+ ").append(nextFileId).append(' ').append(fileSourceName[fi]).append('\n');
+            out.append(fileSourcePath[fi]).append('\n');
+          } else {
+            out.append(nextFileId).append(' ').append(fileSourceName[fi]).append('\n');
+          }
+          ++nextFileId;
+        }
+        for (int li = stratumTable[s].lineIndex; li < stratumTable[s+1].lineIndex; ++li) {
+          int repeat = lineNjplsEnd[li] - lineNjplsStart[li] + 1;
+          lines.append(lineNjplsStart[li]).append('#').append(fileIds.get(lineFileId[li]));
+          if (repeat != 1) {
+            lines.append(',').append(repeat);
+          }
+          lines.append(':').append(lineJplsStart[li]);
+          if (lineJplsLineInc[li] != 1) {
+            lines.append(',').append(lineJplsLineInc[li]);
+          }
+          lines.append('\n');
+        }
+      }
+      out.append("*L\n").append(lines);
+    }
+    out.append("*E\n");
+    return out.toString();
+  }
+
 
   /***************** query functions ***********************/
 
+  /**
+   * Build the index used by stiLineTableIndex.  The JPLS ranges of a
+   * stratum are cut at every range start and end into elementary
+   * segments; each segment maps to the first line table entry that
+   * covers it, which is the entry a linear scan would find.
+   */
+  private synchronized void buildLineIndex() {
+    if (jplsBreaks != null) {
+      return;
+    }
+    int strata = stratumIndex - 1;
+    int[][] allBreaks = new int[strata][];
+    int[][] allLines = new int[strata][];
+    for (int sti = 0; sti < strata; ++sti) {
+      int lineIndexStart = stratumTable[sti].lineIndex;
+      int lineIndexEnd = stratumTable[sti+1].lineIndex;   /* one past end */
+
+      // the entries with a non-empty range, ordered by start line
+      long[] byStart = new long[lineIndexEnd - lineIndexStart];
+      int[] breaks = new int[2 * byStart.length];
+      int count = 0;
+      for (int li = lineIndexStart; li < lineIndexEnd; ++li) {
+        if (lineJplsEnd[li] >= lineJplsStart[li]) {
+          byStart[count] = ((long)lineJplsStart[li] << 32) | li;
+          breaks[2 * count] = lineJplsStart[li];
+          breaks[2 * count + 1] = lineJplsEnd[li] + 1;
+          ++count;
+        }
+      }
+      Arrays.sort(byStart, 0, count);
+      Arrays.sort(breaks, 0, 2 * count);
+      int breakCount = 0;
+      for (int i = 0; i < 2 * count; ++i) {
+        if (breakCount == 0 || breaks[breakCount - 1] != breaks[i]) {
+          breaks[breakCount++] = breaks[i];
+        }
+      }
+
+      // sweep the breaks, keeping the covering entries in a binary
+      // min-heap of line table indexes; entries that ended are dropped lazily
+      int[] lines = new int[breakCount];
+      int[] active = new int[count];
+      int activeCount = 0;
+      int next = 0;
+      for (int bi = 0; bi < breakCount; ++bi) {
+        int line = breaks[bi];
+        while (next < count && (int)(byStart[next] >> 32) <= line) {
+          heapPush(active, activeCount++, (int)byStart[next++]);
+        }
+        while (activeCount > 0 && lineJplsEnd[active[0]] < line) {
+          heapPop(active, activeCount--);
+        }
+        lines[bi] = activeCount == 0? -1 : active[0];
+      }
+      allBreaks[sti] = Arrays.copyOf(breaks, breakCount);
+      allLines[sti] = lines;
+    }
+    jplsBreakLines = allLines;
+    jplsBreaks = allBreaks;
+  }
+
+  // add value to the heap of the first size elements of heap
+  private static void heapPush(int[] heap, int size, int value) {
+    int i = size;
+    while (i > 0 && heap[(i - 1) >>> 1] > value) {
+      heap[i] = heap[(i - 1) >>> 1];
+      i = (i - 1) >>> 1;
+    }
+    heap[i] = value;
+  }
+
+  // remove the least value from the heap of the first size elements of heap
+  private static void heapPop(int[] heap, int size) {
+    int last = heap[--size];
+    int i = 0;
+    while (2 * i + 1 < size) {
+      int child = 2 * i + 1;
+      if (child + 1 < size && heap[child + 1] < heap[child]) {
+        ++child;
+      }
+      if (heap[child] >= last) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = last;
+  }
+
+  // the line index, built if need be
+  private int[][] jplsBreaks() {
+    int[][] breaks = jplsBreaks;
+    if (breaks == null) {
+      buildLineIndex();
+      breaks = jplsBreaks;
+    }
+    return breaks;
+  }
+
   private int stiLineTableIndex(int sti, int jplsLine) {
-    int i;
-    int lineIndexStart;
-    int lineIndexEnd;
-
-    lineIndexStart = stratumTable[sti].lineIndex;
-    /* one past end */
-    lineIndexEnd = stratumTable[sti+1].lineIndex; 
-    for (i = lineIndexStart; i < lineIndexEnd; ++i) {
-      if ((jplsLine >= lineTable[i].jplsStart) &&
-          (jplsLine <= lineTable[i].jplsEnd)) {
-        return i;
+    int[] breaks = jplsBreaks()[sti];
+    int low = 0;
+    int high = breaks.length - 1;
+
+    /* find the last break at or before jplsLine */
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (breaks[mid] <= jplsLine) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
       }
     }
-    return -1;
+    return high < 0? -1 : jplsBreakLines[sti][high];
   }
 
   private int stiLineNumber(int sti, int lti, int jplsLine) {
-    return lineTable[lti].njplsStart + 
-      (((jplsLine - lineTable[lti].jplsStart) / 
-        lineTable[lti].jplsLineInc));
+    return lineNjplsStart[lti] + 
+      (((jplsLine - lineJplsStart[lti]) / 
+        lineJplsLineInc[lti]));
   }
 
   private int fileTableIndex(int sti, int fileId) {
-    int i;
-    int fileIndexStart = stratumTable[sti].fileIndex;
-    /* one past end */
-    int fileIndexEnd = stratumTable[sti+1].fileIndex; 
-    for (i = fileIndexStart; i < fileIndexEnd; ++i) {
-      if (fileTable[i].fileId == fileId) {
-        return i;
+    return stratumTable[sti].fileIds.get(fileId);
+  }
+
+  private int stiFileTableIndex(int sti, int lti) {
+    return fileTableIndex(sti, lineFileId[lti]);
+  }
+
+  /**
+   * Map a Java line to the input line of the given stratum (null for
+   * the default stratum) it was translated from.  The file table index
+   * and the input line are packed into the result, see mappedFileIndex
+   * and mappedLine, so that no object is allocated; -1 is returned if
+   * the line is not mapped.
+   */
+  public long mapJavaLine(String stratumId, int javaLine) {
+    int sti = stratumTableIndex(stratumId);
+    if (sti < 0 || sti >= stratumIndex - 1) {
+      return -1;
+    }
+    int lti = stiLineTableIndex(sti, javaLine);
+    if (lti == -1) {
+      return -1;
+    }
+    int fti = stiFileTableIndex(sti, lti);
+    if (fti == -1) {
+      return -1;
+    }
+    return ((long)fti << 32) | stiLineNumber(sti, lti, javaLine);
+  }
+
+  /**
+   * Add the decoded tables to a binary index, see SMAPIndex.  The files
+   * of each stratum go in FileId order, and the line entries with the
+   * index built by buildLineIndex, so the index needs no parsing.
+   */
+  void exportIndex(SMAPIndex.Writer index, String name) {
+    int strata = stratumIndex - 1;
+    index.startSMAP(name, defaultStratumTableIndex());
+    for (int sti = 0; sti < strata; ++sti) {
+      index.startStratum(stratumTable[sti].id);
+      int fileIndexStart = stratumTable[sti].fileIndex;
+      int fileIndexEnd = stratumTable[sti+1].fileIndex;
+      long[] byId = new long[fileIndexEnd - fileIndexStart];
+      for (int fi = fileIndexStart; fi < fileIndexEnd; ++fi) {
+        byId[fi - fileIndexStart] = ((long)fileFileId[fi] << 32) | fi;
+      }
+      Arrays.sort(byId);
+      int fileBase = index.fileCount();
+      int[] indexed = new int[byId.length];   // where each file went
+      for (int k = 0; k < byId.length; ++k) {
+        int fi = (int)byId[k];
+        index.file(fileFileId[fi], fileSourceName[fi], fileSourcePath[fi]);
+        indexed[fi - fileIndexStart] = fileBase + k;
+      }
+      int lineBase = index.lineCount() - stratumTable[sti].lineIndex;
+      for (int li = stratumTable[sti].lineIndex; li < stratumTable[sti+1].lineIndex; ++li) {
+        int fti = stiFileTableIndex(sti, li);
+        index.line(lineJplsStart[li], lineJplsLineInc[li], lineNjplsStart[li],
+                   fti == -1? -1 : indexed[fti - fileIndexStart]);
+      }
+      int[] breaks = jplsBreaks()[sti];
+      for (int bi = 0; bi < breaks.length; ++bi) {
+        int lti = jplsBreakLines[sti][bi];
+        index.jplsBreak(breaks[bi], lti == -1? -1 : lineBase + lti);
       }
     }
-    return -1;
   }
 
-  private int stiFileTableIndex(int sti, int lti) {
-    return fileTableIndex(sti, lineTable[lti].fileId);
+  /**
+   * Build the index used by mapInputLine.  The line entries of each
+   * file, mapping a non-empty range of Java lines, are cut at every
+   * input range start and end into segments, like the JPLS ranges in
+   * buildLineIndex; each segment lists all entries covering it.
+   */
+  private synchronized void buildInputLineIndex() {
+    if (njplsBreaks != null) {
+      return;
+    }
+    int files = fileIndex;
+    int[][] breaks = new int[files][];
+    int[][] segments = new int[files][];
+    int[][] entries = new int[files][];
+
+    // the entries of each file, ordered by input start line
+    int[] fileFirst = new int[files + 1];
+    int[] entryFile = new int[lineIndex];
+    Arrays.fill(entryFile, -1);
+    for (int sti = 0; sti < stratumIndex - 1; ++sti) {
+      for (int li = stratumTable[sti].lineIndex; li < stratumTable[sti+1].lineIndex; ++li) {
+        int fti = stiFileTableIndex(sti, li);
+        if (fti != -1 && lineJplsLineInc[li] > 0 && lineJplsEnd[li] >= lineJplsStart[li]) {
+          entryFile[li] = fti;
+          ++fileFirst[fti + 1];
+        }
+      }
+    }
+    for (int fi = 0; fi < files; ++fi) {
+      fileFirst[fi + 1] += fileFirst[fi];
+    }
+    long[] byStart = new long[fileFirst[files]];
+    int[] next = Arrays.copyOf(fileFirst, files);
+    for (int li = 0; li < lineIndex; ++li) {
+      if (entryFile[li] != -1) {
+        byStart[next[entryFile[li]]++] = ((long)lineNjplsStart[li] << 32) | li;
+      }
+    }
+
+    int[] active = new int[16];
+    for (int fi = 0; fi < files; ++fi) {
+      int first = fileFirst[fi];
+      int count = fileFirst[fi + 1] - first;
+      Arrays.sort(byStart, first, first + count);
+      int[] fileBreaks = new int[2 * count];
+      for (int k = 0; k < count; ++k) {
+        int li = (int)byStart[first + k];
+        fileBreaks[2 * k] = lineNjplsStart[li];
+        fileBreaks[2 * k + 1] = lineNjplsEnd[li] + 1;
+      }
+      Arrays.sort(fileBreaks);
+      int breakCount = 0;
+      for (int i = 0; i < fileBreaks.length; ++i) {
+        if (breakCount == 0 || fileBreaks[breakCount - 1] != fileBreaks[i]) {
+          fileBreaks[breakCount++] = fileBreaks[i];
+        }
+      }
+
+      // sweep the breaks, keeping the entries covering the current one
+      int[] fileSegments = new int[breakCount + 1];
+      int[] fileEntries = new int[count];
+      int entryCount = 0;
+      int activeCount = 0;
+      int k = 0;
+      for (int bi = 0; bi < breakCount; ++bi) {
+        int line = fileBreaks[bi];
+        int kept = 0;
+        for (int a = 0; a < activeCount; ++a) {
+          if (lineNjplsEnd[active[a]] >= line) {
+            active[kept++] = active[a];
+          }
+        }
+        activeCount = kept;
+        while (k < count && (int)(byStart[first + k] >> 32) <= line) {
+          if (activeCount == active.length) {
+            active = Arrays.copyOf(active, 2 * activeCount);
+          }
+          active[activeCount++] = (int)byStart[first + k++];
+        }
+        fileSegments[bi] = entryCount;
+        if (entryCount + activeCount > fileEntries.length) {
+          fileEntries = Arrays.copyOf(fileEntries, Math.max(entryCount + activeCount, 2 * fileEntries.length));
+        }
+        System.arraycopy(active, 0, fileEntries, entryCount, activeCount);
+        entryCount += activeCount;
+      }
+      fileSegments[breakCount] = entryCount;
+      breaks[fi] = Arrays.copyOf(fileBreaks, breakCount);
+      segments[fi] = fileSegments;
+      entries[fi] = Arrays.copyOf(fileEntries, entryCount);
+    }
+    njplsSegments = segments;
+    njplsEntries = entries;
+    njplsBreaks = breaks;
+  }
+
+  /**
+   * Map an input line of the file with the given FileId in the given
+   * stratum (null for the default stratum) to the Java lines translated
+   * from it: pairs of first and last Java line, ordered by first line.
+   * The result is empty if the line is not mapped.
+   */
+  public int[] mapInputLine(String stratumId, int fileId, int inputLine) {
+    int sti = stratumTableIndex(stratumId);
+    if (sti < 0 || sti >= stratumIndex - 1) {
+      return NO_LINES;
+    }
+    int fti = fileTableIndex(sti, fileId);
+    return fti == -1? NO_LINES : mapInputLine(fti, inputLine);
+  }
+
+  /**
+   * As above, for the file with the given file table index; no lines
+   * are returned if there is no such file.
+   */
+  public int[] mapInputLine(int fileIndex, int inputLine) {
+    if (fileIndex < 0 || fileIndex >= this.fileIndex) {
+      return NO_LINES;
+    }
+    if (njplsBreaks == null) {
+      buildInputLineIndex();
+    }
+    int[] breaks = njplsBreaks[fileIndex];
+    int low = 0;
+    int high = breaks.length - 1;
+
+    /* find the last break at or before inputLine */
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (breaks[mid] <= inputLine) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if (high < 0) {
+      return NO_LINES;
+    }
+    int[] entries = njplsEntries[fileIndex];
+    int from = njplsSegments[fileIndex][high];
+    int to = njplsSegments[fileIndex][high + 1];
+    if (from == to) {
+      return NO_LINES;
+    }
+    int[] ranges = new int[2 * (to - from)];
+    int count = 0;
+    for (int e = from; e < to; ++e) {
+      int li = entries[e];
+      int start = lineJplsStart[li] + (inputLine - lineNjplsStart[li]) * lineJplsLineInc[li];
+      int end = start + lineJplsLineInc[li] - 1;
+
+      // insert in order of first line; there are only a few
+      int i = count;
+      while (i > 0 && ranges[2 * i - 2] > start) {
+        ranges[2 * i] = ranges[2 * i - 2];
+        ranges[2 * i + 1] = ranges[2 * i - 1];
+        --i;
+      }
+      ranges[2 * i] = start;
+      ranges[2 * i + 1] = end;
+      ++count;
+    }
+    return ranges;
+  }
+
+  public static int mappedFileIndex(long mapping) {
+    return (int)(mapping >> 32);
+  }
+
+  public static int mappedLine(long mapping) {
+    return (int)mapping;
+  }
+
+  public String sourceName(int fileIndex) {
+    return fileSourceName[fileIndex];
+  }
+
+  // null if there is no AbsoluteFileName
+  public String sourcePath(int fileIndex) {
+    return fileSourcePath[fileIndex];
+  }
+
+  /**
+   * Verify one SMAP or class file.  The SMAP of a class file is
+   * a resolved SMAP.
+   */
+  static Result verifyFile(String source) throws IOException {
+    return verifyFile(source, false);
+  }
+
+  static Result verifyFile(String source, boolean collectAll) throws IOException {
+    return verify(source, new ByteSequence(readSMAP(source)), isResolved(source), collectAll);
+  }
+
+  /**
+   * The SMAP bytes of an SMAP or class file, for the command line: a
+   * configuration error is reported as well as thrown.
+   */
+  static ByteBuffer readSMAP(String source) throws IOException {
+    try {
+      if (isResolved(source)) {
+        return (new ExtractSDE(source)).findSDE();
+      } else {
+        return mapWhole(source);
+      }
+    } catch (ConfigurationException ex) {
+      ex.report(System.err);
+      throw ex;
+    }
+  }
+
+  // the SMAP of a class file is resolved
+  static boolean isResolved(String source) {
+    return source.endsWith(".class");
   }
 
   public static void main(String[] args) throws IOException {
-    if (args.length != 1) {
-      configError("Must be exactly one argument (the SMAP or class file to verify)");
+    if (args.length == 0) {
+      configError("VerifySMAP", "Must be at least one argument (the SMAP or class file to verify, " +
+                  "or options and directories/glob patterns to verify in batch)");
+    }
+    if (args[0].equals("-resolve") && args.length == 2) {
+      // print the resolved SMAP, composing its embedded SMAPs
+      System.out.print(resolve(args[1], new ByteSequence(readSMAP(args[1]))));
+      return;
     }
     System.out.println();
-    source = args[0];
-    String smap;
-    boolean resolved = false;
-    if (source.endsWith(".class")) {
-      smap = (new ExtractSDE(source)).parseClassFile();
-      resolved = true;
-    } else {
-      smap = new String(readWhole(source));
+    if (BatchVerifier.isBatch(args)) {
+      System.exit(BatchVerifier.run(args));
     }
-    VerifySMAP vsmap = new VerifySMAP(smap, resolved);
-    if (vsmap.decode()) {
-      vsmap.verify();
+    String source = args[0];
+    Result result = verifyFile(source);
+    if (!result.isValid()) {
+      result.getViolation().report(System.err);
+      throw result.getViolation();
     }
+    boolean resolved = source.endsWith(".class");
     System.out.println(source + (resolved? " contains" : " is") + " a correctly formatted SMAP");
   }
 }    
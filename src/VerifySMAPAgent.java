@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.ProtectionDomain;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A java agent that verifies the SourceDebugExtension of classes as
+ * they are loaded:
+ *
+ *     java -javaagent:debugging-tck.jar=sample=1,budget=5,queue=1024 ...
+ *
+ * The class loading thread only finds the SourceDebugExtension, most
+ * often from the constant pool alone, and copies it onto a bounded
+ * queue, or drops it if it is full; a background thread verifies the
+ * SMAPs.  Options (comma separated):
+ *   sample=N   verify one in N classes loaded (default 1, every class)
+ *   budget=P   CPU the verifier thread may use, in percent of one core (default 5);
+ *              time idle is credited for bursts of up to one second of budget
+ *   queue=N    classes waiting to be verified before more are dropped (default 1024)
+ *   verbose    also log the classes that pass
+ *
+ * Failures are logged to System.err as they are found; the counters are
+ * logged when the JVM exits.
+ */
+public class VerifySMAPAgent implements ClassFileTransformer, Runnable {
+
+  static final String LOG_PREFIX = "[VerifySMAP agent] ";
+
+  // the wall time whose budget may be saved up for a burst
+  static final long BURST_NANOS = 1000000000L;
+
+  private final int sample;
+  private final int budgetPercent;
+  private final boolean verbose;
+  private final BlockingQueue<Object[]> queue;
+
+  final AtomicLong loaded = new AtomicLong();
+  final AtomicLong queued = new AtomicLong();
+  final AtomicLong dropped = new AtomicLong();
+  final AtomicLong withoutSMAP = new AtomicLong();
+  final AtomicLong unreadable = new AtomicLong();
+  final AtomicLong passed = new AtomicLong();
+  final AtomicLong failed = new AtomicLong();
+
+  VerifySMAPAgent(int sample, int budgetPercent, int queueSize, boolean verbose) {
+    this.sample = Math.max(1, sample);
+    this.budgetPercent = Math.max(1, Math.min(100, budgetPercent));
+    this.verbose = verbose;
+    this.queue = new ArrayBlockingQueue<Object[]>(Math.max(1, queueSize));
+  }
+
+  public static void premain(String args, Instrumentation inst) {
+    start(args, inst);
+  }
+
+  public static void agentmain(String args, Instrumentation inst) {
+    start(args, inst);
+  }
+
+  static VerifySMAPAgent start(String args, Instrumentation inst) {
+    int sample = 1;
+    int budget = 5;
+    int queueSize = 1024;
+    boolean verbose = false;
+    if (args != null) {
+      for (String arg : args.split(",")) {
+        String option = arg.trim();
+        if (option.startsWith("sample=")) {
+          sample = Integer.parseInt(option.substring("sample=".length()));
+        } else if (option.startsWith("budget=")) {
+          budget = Integer.parseInt(option.substring("budget=".length()));
+        } else if (option.startsWith("queue=")) {
+          queueSize = Integer.parseInt(option.substring("queue=".length()));
+        } else if (option.equals("verbose")) {
+          verbose = true;
+        } else if (option.length() > 0) {
+          System.err.println(LOG_PREFIX + "ignoring unknown option " + option);
+        }
+      }
+    }
+    final VerifySMAPAgent agent = new VerifySMAPAgent(sample, budget, queueSize, verbose);
+    preload();
+    Thread worker = new Thread(agent, "VerifySMAP agent");
+    worker.setDaemon(true);
+    worker.setPriority(Thread.MIN_PRIORITY);
+    worker.start();
+    Runtime.getRuntime().addShutdownHook(new Thread("VerifySMAP agent summary") {
+      public void run() {
+        System.err.println(LOG_PREFIX + agent.counters());
+      }
+    });
+    inst.addTransformer(agent);
+    return agent;
+  }
+
+  /**
+   * Load and initialize the verifier's classes before the transformer
+   * is added, so that transform never loads them itself: that would
+   * transform them in turn, or fail with a ClassCircularityError.  The
+   * extraction and verification paths are run once, a failure each.
+   */
+  static void preload() {
+    try {
+      new VerifySMAP.ExtractSDE("preload", ByteBuffer.wrap(new byte[4])).findSDE(false);
+    } catch (VerifySMAP.ConfigurationException ex) {
+      // as expected: no magic
+    }
+    VerifySMAP.Result result = VerifySMAP.verify("preload", new VerifySMAP.ByteSequence(
+      ByteBuffer.wrap("SMAP\nA.java\nJSP\n*S JSP\n*F\n1 A.jsp\n*L\n1#2:1\n*E\n".getBytes(StandardCharsets.US_ASCII))), true);
+    BatchVerifier.describe(result.getViolation());
+  }
+
+  /**
+   * Called on the class loading path: sample, find the SDE, copy and
+   * queue it, never block.  Nothing is printed here but the classes
+   * that cannot be read.
+   */
+  public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                          ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+    // JDK classes have no SMAPs
+    if (loader == null || classfileBuffer == null) {
+      return null;
+    }
+    long count = loaded.incrementAndGet();
+    if (count % sample != 0) {
+      return null;
+    }
+    ByteBuffer sde;
+    try {
+      sde = new VerifySMAP.ExtractSDE(className, ByteBuffer.wrap(classfileBuffer)).findSDE(false);
+    } catch (RuntimeException ex) {
+      // a class file ExtractSDE cannot read says nothing about SMAPs
+      unreadable.incrementAndGet();
+      System.err.println(LOG_PREFIX + "UNREADABLE " + className + ": " +
+                         (ex instanceof VerifySMAP.ConfigurationException? ex.getMessage() : ex.toString()));
+      return null;
+    }
+    if (sde == null) {
+      withoutSMAP.incrementAndGet();
+      return null;
+    }
+    byte[] copy = new byte[sde.remaining()];
+    sde.get(copy);
+    if (queue.offer(new Object[] { className, copy, classfileBuffer.length })) {
+      queued.incrementAndGet();
+    } else {
+      dropped.incrementAndGet();
+    }
+    return null;   // the class is not changed
+  }
+
+  public void run() {
+    ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+    // a token bucket of CPU nanoseconds, filled at the budget's rate
+    long burst = BURST_NANOS * budgetPercent / 100;
+    long credit = burst;
+    long lastWall = System.nanoTime();
+    long lastCpu = cpuTime? threads.getCurrentThreadCpuTime() : 0;
+    while (true) {
+      Object[] item;
+      try {
+        item = queue.take();
+      } catch (InterruptedException ex) {
+        return;
+      }
+      verify(((String)item[0]).replace('/', '.'), (byte[])item[1], (Integer)item[2]);
+
+      // stay within the CPU budget by sleeping off any excess
+      if (cpuTime) {
+        long wall = System.nanoTime();
+        long cpu = threads.getCurrentThreadCpuTime();
+        credit = Math.min(burst, credit + (wall - lastWall) * budgetPercent / 100) - (cpu - lastCpu);
+        lastWall = wall;
+        lastCpu = cpu;
+        if (credit < 0) {
+          try {
+            Thread.sleep(-credit * 100 / budgetPercent / 1000000 + 1);
+          } catch (InterruptedException ex) {
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  void verify(String className, byte[] sde, int classFileLength) {
+    try {
+      VerifySMAP.Result result = VerifySMAP.verify(className,
+                                                   new VerifySMAP.ByteSequence(ByteBuffer.wrap(sde)), true);
+      result.metrics.bytes = classFileLength;
+      VerificationEvent.commit(result);
+      if (result.isValid()) {
+        passed.incrementAndGet();
+        if (verbose) {
+          System.err.println(LOG_PREFIX + className + " contains a correctly formatted SMAP");
+        }
+      } else {
+        failed.incrementAndGet();
+        System.err.println(LOG_PREFIX + "FAILED " + className + ": " +
+                           BatchVerifier.describe(result.getViolation()));
+      }
+    } catch (VerifySMAP.ConfigurationException ex) {
+      failed.incrementAndGet();
+      System.err.println(LOG_PREFIX + "FAILED " + className + ": Configuration error - " +
+                         ex.getMessage());
+    } catch (RuntimeException ex) {
+      failed.incrementAndGet();
+      System.err.println(LOG_PREFIX + "FAILED " + className + ": " + ex);
+    }
+  }
+
+  String counters() {
+    return "classes loaded: " + loaded.get() + ", queued: " + queued.get() +
+      ", dropped: " + dropped.get() + ", without SMAP: " + withoutSMAP.get() +
+      ", unreadable: " + unreadable.get() +
+      ", SMAPs passed: " + passed.get() + ", failed: " + failed.get();
+  }
+}
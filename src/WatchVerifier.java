@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2026 Contributors to the Eclipse Foundation
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License v. 2.0, which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the
+ * Eclipse Public License v. 2.0 are satisfied: GNU General Public License,
+ * version 2 with the GNU Classpath Exception, which is available at
+ * https://www.gnu.org/software/classpath/license.html.
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR GPL-2.0 WITH Classpath-exception-2.0
+ */
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Watch mode for VerifySMAP: verifies "*.class" and "*.smap" files as
+ * the JSP engine writes them, for example under
+ * domains/domain1/generated/jsp with dumpSmap set.
+ *
+ * The directories are watched recursively; the tree is walked only
+ * once, when it is registered.  A file is verified once it has had no
+ * events for the debounce interval, since the JSP engine writes a class
+ * and its SMAP in bursts.  Each verdict is printed with the latency
+ * from the last write of the file.  Runs until the JVM is stopped; the
+ * cache, if any, is saved then.
+ *
+ * The JSP engine may rewrite a file while it is verified, so files are
+ * read into the heap, not mapped.
+ */
+class WatchVerifier {
+
+  static final long DEFAULT_DEBOUNCE_MILLIS = 250;
+
+  // how often a changed cache is written out
+  private static final long CACHE_SAVE_MILLIS = 30000;
+
+  private final BatchVerifier batch;
+  private final long debounceMillis;
+  private final WatchService watcher;
+
+  // files with recent events, and when they may be verified
+  private final Map<Path, Long> pending = new LinkedHashMap<Path, Long>();
+
+  WatchVerifier(BatchVerifier batch, long debounceMillis) throws IOException {
+    this.batch = batch;
+    this.debounceMillis = debounceMillis;
+    this.watcher = FileSystems.getDefault().newWatchService();
+  }
+
+  void watch(List<String> dirs) throws IOException, InterruptedException {
+    for (String dir : dirs) {
+      Path path = Paths.get(dir);
+      if (!Files.isDirectory(path)) {
+        VerifySMAP.configError(dir, "Only directories can be watched");
+      }
+      register(path, false);
+    }
+    if (batch.cache != null) {
+      Runtime.getRuntime().addShutdownHook(new Thread("VerifySMAP cache save") {
+        public void run() {
+          try {
+            batch.cache.save();
+          } catch (IOException ex) {
+            System.err.println("Warning: cache not saved: " + ex);
+          }
+        }
+      });
+    }
+    System.out.println("Watching " + dirs + " for SMAP and class files");
+    long lastSave = System.currentTimeMillis();
+    while (true) {
+      long now = System.currentTimeMillis();
+      WatchKey key = pending.isEmpty()? watcher.poll(CACHE_SAVE_MILLIS, TimeUnit.MILLISECONDS)
+        : watcher.poll(Math.max(1, nextDeadline() - now), TimeUnit.MILLISECONDS);
+      if (key != null) {
+        handle(key);
+      }
+      verifyQuietFiles(System.currentTimeMillis());
+      if (batch.cache != null && System.currentTimeMillis() - lastSave > CACHE_SAVE_MILLIS) {
+        batch.cache.save();
+        lastSave = System.currentTimeMillis();
+      }
+    }
+  }
+
+  /**
+   * Watch a directory and all directories under it.  For a directory
+   * that appeared while watching, the files already in it are queued,
+   * since their creation events were missed.
+   */
+  void register(Path root, final boolean queueFiles) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+        throws IOException {
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                     StandardWatchEventKinds.ENTRY_MODIFY);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (queueFiles && BatchVerifier.isVerifiable(file)) {
+          touch(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  void handle(WatchKey key) throws IOException {
+    Path dir = (Path)key.watchable();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        System.err.println("Warning: events lost in " + dir + ", some files may not be verified");
+        continue;
+      }
+      Path path = dir.resolve((Path)event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+        register(path, true);
+      } else if (BatchVerifier.isVerifiable(path)) {
+        touch(path);
+      }
+    }
+    key.reset();
+  }
+
+  void touch(Path file) {
+    pending.put(file, System.currentTimeMillis() + debounceMillis);
+  }
+
+  long nextDeadline() {
+    long next = Long.MAX_VALUE;
+    for (long deadline : pending.values()) {
+      next = Math.min(next, deadline);
+    }
+    return next;
+  }
+
+  void verifyQuietFiles(long now) throws InterruptedException {
+    Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<Path, Long> entry = it.next();
+      if (entry.getValue() <= now) {
+        it.remove();
+        submit(entry.getKey());
+      }
+    }
+  }
+
+  void submit(final Path file) throws InterruptedException {
+    final String source = file.toString();
+    batch.submit(source, new BatchVerifier.Task() {
+      public void run() {
+        report(file, verify(source));
+      }
+    });
+  }
+
+  VerifySMAP.Result verify(String source) {
+    try {
+      return batch.checkFile(source, true);
+    } catch (IOException ex) {
+      return VerifySMAP.Result.configurationError(source, ex.toString());
+    } catch (VerifySMAP.ConfigurationException ex) {
+      return VerifySMAP.Result.configurationError(source, ex.getMessage());
+    } catch (RuntimeException ex) {
+      return VerifySMAP.Result.configurationError(source, ex.toString());
+    }
+  }
+
+  void report(Path file, VerifySMAP.Result result) {
+    VerificationEvent.commit(result);
+    long latency = -1;
+    try {
+      latency = System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException ex) {
+      // deleted since - no latency
+    }
+    String timing = latency < 0? "" : " (" + latency + " ms after write)";
+    StringBuilder sb = new StringBuilder();
+    if (result.isValid()) {
+      sb.append("PASSED ").append(result.getSource()).append(timing);
+    } else if (result.hasConfigurationError()) {
+      sb.append("FAILED ").append(result.getSource()).append(": Configuration error - ")
+        .append(result.getConfigurationError()).append(timing);
+    } else {
+      for (VerifySMAP.AssertionViolationException violation : result.getViolations()) {
+        sb.append(sb.length() == 0? "" : "\n").append("FAILED ").append(result.getSource())
+          .append(": ").append(BatchVerifier.describe(violation)).append(timing);
+      }
+    }
+    System.out.println(sb);
+  }
+}